@@ -13,6 +13,7 @@ public class BundleFieldIdentifier {
   public static final String PHYSICAL_ACTIVITY = "physicalActivity";
   public static final String BODY_MEASUREMENT = "bodyMeasurement";
   public static final String VITAL_SIGNS = "vitalSigns";
+  public static final String DIAGNOSTIC_LAB = "diagnosticLab";
   public static final String SYSTEM = "system";
   public static final String CODE = "code";
   public static final String DISPLAY = "display";
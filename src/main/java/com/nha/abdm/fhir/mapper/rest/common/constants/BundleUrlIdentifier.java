@@ -3,6 +3,7 @@ package com.nha.abdm.fhir.mapper.rest.common.constants;
 
 public class BundleUrlIdentifier {
   public static final String WRAPPER_URL = "https://ABDM_WRAPPER/bundle";
+  public static final String TERMINOLOGY_VERSION_URL = "https://ABDM_WRAPPER/terminology-version";
   public static final String SNOMED_URL = "http://snomed.info/sct";
   public static final String LOINC_URL = "http://loinc.org";
   public static final String FACILITY_URL = "https://facility.abdm.gov.in";
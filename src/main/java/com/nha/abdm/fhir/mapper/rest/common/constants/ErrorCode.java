@@ -7,4 +7,5 @@ public class ErrorCode {
   public static String INCORRECT_BUNDLE_TYPE = "1003";
   public static String DB_SYNTAX_ERROR = "1004";
   public static String DB_ERROR = "1005";
+  public static String TERMINOLOGY_LOADING = "1006";
 }
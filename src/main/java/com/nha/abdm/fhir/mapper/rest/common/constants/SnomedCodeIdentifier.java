@@ -8,6 +8,7 @@ public class SnomedCodeIdentifier {
   public static final String SNOMED_DIAGNOSTIC_LAB = "261665006";
   public static final String SNOMED_UNKNOWN = "261665006";
   public static final String LOINC_UNKNOWN = "LL3865-4";
+  public static final String LOINC_OBSERVATIONS = "Loinc-Observations";
   public static final String SNOMED_MEDICATIONS = "Medications";
   public static final String SNOMED_DIAGNOSTICS = "Diagnostics";
   public static final String SNOMED_VACCINES = "Vaccines";
@@ -0,0 +1,25 @@
+/* (C) 2024 */
+package com.nha.abdm.fhir.mapper.rest.common.helpers;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class MinHashStats {
+  private String category;
+  private int bands;
+  private int rows;
+  private int maxCandidates;
+  private int buckets;
+  private long lookups;
+  private double averageCandidates;
+  private double averageMicros;
+  private long sampledLookups;
+  private Double sampledRecall;
+  private double recallAtHalfSimilarity;
+}
@@ -0,0 +1,22 @@
+/* (C) 2024 */
+package com.nha.abdm.fhir.mapper.rest.common.helpers;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SnomedCodeValidationResponse {
+  private String message;
+  private String resource;
+  private Integer invalidCount;
+  private List<SnomedCodeValidationResult> results;
+  private List<String> availableSnomed;
+}
@@ -0,0 +1,17 @@
+/* (C) 2024 */
+package com.nha.abdm.fhir.mapper.rest.common.helpers;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SnomedCodeValidationResult {
+  private String code;
+  private String display;
+  private boolean valid;
+}
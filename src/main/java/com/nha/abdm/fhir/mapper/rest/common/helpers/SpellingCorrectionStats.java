@@ -0,0 +1,20 @@
+/* (C) 2024 */
+package com.nha.abdm.fhir.mapper.rest.common.helpers;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SpellingCorrectionStats {
+  private String category;
+  private int maxEditDistance;
+  private int words;
+  private int deletes;
+  private long lookups;
+  private long corrections;
+}
@@ -0,0 +1,22 @@
+/* (C) 2024 */
+package com.nha.abdm.fhir.mapper.rest.common.helpers;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TerminologyCacheStats {
+  private String category;
+  private long size;
+  private long maxSize;
+  private long hits;
+  private long misses;
+  private long evictions;
+  private double hitRate;
+  private long coalesced;
+}
@@ -0,0 +1,26 @@
+/* (C) 2024 */
+package com.nha.abdm.fhir.mapper.rest.common.helpers;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TerminologyLoadStatus {
+  private String category;
+  private State state;
+  private int records;
+  private long loadTimeMs;
+  private String error;
+
+  public enum State {
+    PENDING,
+    LOADING,
+    LOADED,
+    FAILED
+  }
+}
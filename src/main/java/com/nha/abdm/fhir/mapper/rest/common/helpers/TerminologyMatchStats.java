@@ -0,0 +1,20 @@
+/* (C) 2024 */
+package com.nha.abdm.fhir.mapper.rest.common.helpers;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class TerminologyMatchStats {
+  private String category;
+  private long codedHits;
+  private long exactHits;
+  private long fuzzyLookups;
+  private long structuredHits;
+  private double exactHitRate;
+}
@@ -0,0 +1,54 @@
+/* (C) 2024 */
+package com.nha.abdm.fhir.mapper.rest.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nha.abdm.fhir.mapper.rest.common.constants.ErrorCode;
+import com.nha.abdm.fhir.mapper.rest.common.helpers.ErrorResponse;
+import com.nha.abdm.fhir.mapper.rest.common.helpers.FacadeError;
+import com.nha.abdm.fhir.mapper.rest.database.h2.config.DbLoader;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+/** Rejects requests that need the terminology with 503 until every category is loaded. */
+@Component
+public class TerminologyReadinessInterceptor implements HandlerInterceptor {
+  private final DbLoader dbLoader;
+  private final ObjectMapper objectMapper = new ObjectMapper();
+  private final String retryAfterSeconds;
+
+  public TerminologyReadinessInterceptor(
+      DbLoader dbLoader,
+      @Value("${fhir.mapper.terminology.loader.retry-after-seconds:5}") int retryAfterSeconds) {
+    this.dbLoader = dbLoader;
+    this.retryAfterSeconds = String.valueOf(retryAfterSeconds);
+  }
+
+  @Override
+  public boolean preHandle(
+      HttpServletRequest request, HttpServletResponse response, Object handler)
+      throws IOException {
+    if (dbLoader.isReady()) {
+      return true;
+    }
+    response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+    response.setHeader(HttpHeaders.RETRY_AFTER, retryAfterSeconds);
+    response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+    objectMapper.writeValue(
+        response.getOutputStream(),
+        FacadeError.builder()
+            .error(
+                ErrorResponse.builder()
+                    .code(ErrorCode.TERMINOLOGY_LOADING)
+                    .message("Terminology is still loading, retry later")
+                    .build())
+            .build());
+    return false;
+  }
+}
@@ -0,0 +1,34 @@
+/* (C) 2024 */
+package com.nha.abdm.fhir.mapper.rest.config;
+
+import com.nha.abdm.fhir.mapper.rest.database.h2.index.TerminologyIndexRegistry;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+/**
+ * Pins the terminology snapshot for the duration of a request, so a reload published meanwhile
+ * does not change the codes of a bundle half way through its conversion.
+ */
+@Component
+public class TerminologySnapshotInterceptor implements HandlerInterceptor {
+  private final TerminologyIndexRegistry terminologyIndexRegistry;
+
+  public TerminologySnapshotInterceptor(TerminologyIndexRegistry terminologyIndexRegistry) {
+    this.terminologyIndexRegistry = terminologyIndexRegistry;
+  }
+
+  @Override
+  public boolean preHandle(
+      HttpServletRequest request, HttpServletResponse response, Object handler) {
+    terminologyIndexRegistry.pin();
+    return true;
+  }
+
+  @Override
+  public void afterCompletion(
+      HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+    terminologyIndexRegistry.unpin();
+  }
+}
@@ -0,0 +1,29 @@
+/* (C) 2024 */
+package com.nha.abdm.fhir.mapper.rest.config;
+
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+  private final TerminologyReadinessInterceptor terminologyReadinessInterceptor;
+  private final TerminologySnapshotInterceptor terminologySnapshotInterceptor;
+
+  public WebConfig(
+      TerminologyReadinessInterceptor terminologyReadinessInterceptor,
+      TerminologySnapshotInterceptor terminologySnapshotInterceptor) {
+    this.terminologyReadinessInterceptor = terminologyReadinessInterceptor;
+    this.terminologySnapshotInterceptor = terminologySnapshotInterceptor;
+  }
+
+  @Override
+  public void addInterceptors(InterceptorRegistry registry) {
+    registry
+        .addInterceptor(terminologyReadinessInterceptor)
+        .addPathPatterns("/v1/bundle/**", "/v1/snomed/**");
+    registry
+        .addInterceptor(terminologySnapshotInterceptor)
+        .addPathPatterns("/v1/bundle/**", "/v1/snomed/**");
+  }
+}
@@ -2,44 +2,210 @@
 package com.nha.abdm.fhir.mapper.rest.controller;
 
 import com.nha.abdm.fhir.mapper.rest.common.constants.SnomedCodeIdentifier;
+import com.nha.abdm.fhir.mapper.rest.common.helpers.SnomedCodeValidationResponse;
+import com.nha.abdm.fhir.mapper.rest.common.helpers.SnomedCodeValidationResult;
 import com.nha.abdm.fhir.mapper.rest.common.helpers.SnomedResponse;
+import com.nha.abdm.fhir.mapper.rest.common.helpers.SnomedSearchResponse;
+import com.nha.abdm.fhir.mapper.rest.common.helpers.SnomedSearchResult;
+import com.nha.abdm.fhir.mapper.rest.database.h2.index.ScoredConcept;
+import com.nha.abdm.fhir.mapper.rest.database.h2.services.Displayable;
+import com.nha.abdm.fhir.mapper.rest.database.h2.services.SnomedCodeListCache;
 import com.nha.abdm.fhir.mapper.rest.database.h2.services.SnomedService;
+import com.nha.abdm.fhir.mapper.rest.requests.SnomedCodeValidationRequest;
+import jakarta.validation.Valid;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.web.bind.annotation.GetMapping;
-import org.springframework.web.bind.annotation.PathVariable;
-import org.springframework.web.bind.annotation.RequestMapping;
-import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.bind.annotation.*;
 
 @RestController
 @RequestMapping(path = "/v1/snomed")
 public class SnomedController {
+  private static final String GZIP = "gzip";
+  private static final int MAX_SEARCH_LIMIT = 50;
+
   @Autowired SnomedService snomedService;
+  @Autowired SnomedCodeListCache snomedCodeListCache;
 
   /**
-   * Returns all the available snomed codes
+   * Returns the available snomed codes, optionally one page at a time. Responses carry an ETag of
+   * the terminology version and code list contents and are answered with 304 when it still
+   * matches.
    *
-   * @param resource
-   * @return
+   * @param resource name of the resource ex: Medications
+   * @param offset index of the first code, the next page starts at the returned nextOffset
+   * @param limit page size, all the codes when absent
+   * @return code and display of the codes of the resource
    */
   @GetMapping({"/{resource}"})
-  public ResponseEntity<SnomedResponse> getSnomedCodes(@PathVariable("resource") String resource) {
-    if (SnomedCodeIdentifier.availableSnomed.contains(resource)) {
-      SnomedResponse snomedResponse = snomedService.getSnomedCodes(resource);
-      if (Objects.nonNull(snomedResponse)) {
-        snomedResponse.setMessage("Retrieved");
-        return ResponseEntity.ok().body(snomedResponse);
-      } else {
-        snomedResponse.setMessage("Empty Codes");
-        return ResponseEntity.badRequest().body(snomedResponse);
-      }
-    } else
+  public ResponseEntity<?> getSnomedCodes(
+      @PathVariable("resource") String resource,
+      @RequestParam(name = "offset", required = false, defaultValue = "0") int offset,
+      @RequestParam(name = "limit", required = false) Integer limit,
+      @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+      @RequestHeader(name = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+    if (!SnomedCodeIdentifier.availableSnomed.contains(resource)) {
       return ResponseEntity.badRequest()
           .body(
               SnomedResponse.builder()
                   .message("Invalid Resource")
                   .availableSnomed(SnomedCodeIdentifier.availableSnomed)
                   .build());
+    }
+    if (offset < 0 || (limit != null && limit <= 0)) {
+      return ResponseEntity.badRequest()
+          .body(SnomedResponse.builder().message("Invalid offset or limit").build());
+    }
+
+    SnomedCodeListCache.CodeListPage page = snomedCodeListCache.getPage(resource, offset, limit);
+    if (Objects.isNull(page)) {
+      return ResponseEntity.badRequest()
+          .body(SnomedResponse.builder().message("Empty Codes").build());
+    }
+    ResponseEntity.BodyBuilder response =
+        ResponseEntity.ok()
+            .eTag(page.etag())
+            .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+            .contentType(MediaType.APPLICATION_JSON);
+    if (ifNoneMatch != null && (ifNoneMatch.equals("*") || ifNoneMatch.contains(page.etag()))) {
+      return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+          .eTag(page.etag())
+          .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+          .build();
+    }
+    if (acceptsGzip(acceptEncoding)) {
+      return response.header(HttpHeaders.CONTENT_ENCODING, GZIP).body(page.gzip());
+    }
+    return response.body(page.json());
+  }
+
+  /**
+   * Whether the Accept-Encoding header allows gzip, by name or through "*", with a non-zero
+   * q-value; ex: "gzip;q=0" or "*;q=0" refuse it.
+   */
+  private static boolean acceptsGzip(String acceptEncoding) {
+    if (acceptEncoding == null) {
+      return false;
+    }
+    Double wildcard = null;
+    for (String coding : acceptEncoding.split(",")) {
+      String[] parameters = coding.split(";");
+      String name = parameters[0].trim().toLowerCase(Locale.ROOT);
+      double quality = 1.0;
+      for (int i = 1; i < parameters.length; i++) {
+        String parameter = parameters[i].trim().toLowerCase(Locale.ROOT);
+        if (parameter.startsWith("q=")) {
+          try {
+            quality = Double.parseDouble(parameter.substring(2).trim());
+          } catch (NumberFormatException e) {
+            quality = 0;
+          }
+        }
+      }
+      if (name.equals(GZIP) || name.equals("x-" + GZIP)) {
+        return quality > 0;
+      }
+      if (name.equals("*")) {
+        wildcard = quality;
+      }
+    }
+    return wildcard != null && wildcard > 0;
+  }
+
+  /**
+   * Typeahead search over the codes of a resource, ranked by similarity to the typed text. The last
+   * word may be incomplete.
+   *
+   * @param resource name of the resource ex: Medications
+   * @param query text typed so far
+   * @param limit maximum number of results, at most 50
+   * @return best matching codes first
+   */
+  @GetMapping({"/{resource}/search"})
+  public ResponseEntity<SnomedSearchResponse> search(
+      @PathVariable("resource") String resource,
+      @RequestParam(name = "q") String query,
+      @RequestParam(name = "limit", required = false, defaultValue = "10") int limit) {
+    List<? extends ScoredConcept<? extends Displayable>> matches =
+        SnomedCodeIdentifier.availableSnomed.contains(resource)
+            ? snomedService.search(resource, query, Math.max(1, Math.min(limit, MAX_SEARCH_LIMIT)))
+            : null;
+    if (Objects.isNull(matches)) {
+      return ResponseEntity.badRequest()
+          .body(
+              SnomedSearchResponse.builder()
+                  .message("Invalid Resource")
+                  .availableSnomed(SnomedCodeIdentifier.availableSnomed)
+                  .build());
+    }
+    List<SnomedSearchResult> results = new ArrayList<>(matches.size());
+    for (ScoredConcept<? extends Displayable> match : matches) {
+      results.add(
+          SnomedSearchResult.builder()
+              .code(match.concept().getCode())
+              .display(match.concept().getDisplay())
+              .score(match.score())
+              .build());
+    }
+    return ResponseEntity.ok(
+        SnomedSearchResponse.builder()
+            .message("Retrieved")
+            .resource(resource)
+            .query(query)
+            .results(results)
+            .build());
+  }
+
+  /**
+   * Validates a batch of codes against the codes of a resource, without downloading the code list
+   *
+   * @param resource name of the resource ex: Medications
+   * @param request codes to validate, at most 1000
+   * @return display and validity of every distinct code, in request order
+   */
+  @PostMapping({"/{resource}/validate"})
+  public ResponseEntity<SnomedCodeValidationResponse> validate(
+      @PathVariable("resource") String resource,
+      @Valid @RequestBody SnomedCodeValidationRequest request) {
+    Map<String, ? extends Displayable> concepts =
+        SnomedCodeIdentifier.availableSnomed.contains(resource)
+            ? snomedService.validateCodes(resource, request.getCodes())
+            : null;
+    if (Objects.isNull(concepts)) {
+      return ResponseEntity.badRequest()
+          .body(
+              SnomedCodeValidationResponse.builder()
+                  .message("Invalid Resource")
+                  .availableSnomed(SnomedCodeIdentifier.availableSnomed)
+                  .build());
+    }
+    List<SnomedCodeValidationResult> results = new ArrayList<>(concepts.size());
+    int invalidCount = 0;
+    for (Map.Entry<String, ? extends Displayable> entry : concepts.entrySet()) {
+      Displayable concept = entry.getValue();
+      if (concept == null) {
+        invalidCount++;
+      }
+      results.add(
+          SnomedCodeValidationResult.builder()
+              .code(entry.getKey())
+              .display(concept == null ? null : concept.getDisplay())
+              .valid(concept != null)
+              .build());
+    }
+    return ResponseEntity.ok(
+        SnomedCodeValidationResponse.builder()
+            .message("Validated")
+            .resource(resource)
+            .invalidCount(invalidCount)
+            .results(results)
+            .build());
   }
 }
@@ -0,0 +1,228 @@
+/* (C) 2024 */
+package com.nha.abdm.fhir.mapper.rest.controller;
+
+import com.nha.abdm.fhir.mapper.rest.common.helpers.MinHashStats;
+import com.nha.abdm.fhir.mapper.rest.common.helpers.SpellingCorrectionStats;
+import com.nha.abdm.fhir.mapper.rest.common.helpers.TerminologyCacheStats;
+import com.nha.abdm.fhir.mapper.rest.common.helpers.TerminologyCoalescedLookup;
+import com.nha.abdm.fhir.mapper.rest.common.helpers.TerminologyLoadStatus;
+import com.nha.abdm.fhir.mapper.rest.common.helpers.TerminologyMatchStats;
+import com.nha.abdm.fhir.mapper.rest.common.helpers.TerminologyVersion;
+import com.nha.abdm.fhir.mapper.rest.database.h2.config.DbLoader;
+import com.nha.abdm.fhir.mapper.rest.database.h2.config.Rf2IndexLoader;
+import com.nha.abdm.fhir.mapper.rest.database.h2.index.MinHashIndex;
+import com.nha.abdm.fhir.mapper.rest.database.h2.index.SpellingCorrector;
+import com.nha.abdm.fhir.mapper.rest.database.h2.index.TerminologyIndexRegistry;
+import com.nha.abdm.fhir.mapper.rest.database.h2.index.TerminologySnapshot;
+import com.nha.abdm.fhir.mapper.rest.database.h2.services.SnomedService;
+import com.nha.abdm.fhir.mapper.rest.database.h2.services.TerminologyCache;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping(path = "/v1/admin/terminology")
+public class TerminologyAdminController {
+  @Autowired TerminologyCache terminologyCache;
+  @Autowired DbLoader dbLoader;
+  @Autowired Rf2IndexLoader rf2IndexLoader;
+  @Autowired TerminologyIndexRegistry terminologyIndexRegistry;
+  @Autowired SnomedService snomedService;
+
+  /**
+   * Returns the load state, record count and load time of every category
+   *
+   * @return load status per category
+   */
+  @GetMapping("/status")
+  public ResponseEntity<List<TerminologyLoadStatus>> getLoadStatus() {
+    return ResponseEntity.ok(dbLoader.getLoadStatus());
+  }
+
+  /**
+   * Readiness probe, OK only once every category is loaded and indexed
+   *
+   * @return load status per category, with 503 while loading or after a failed load
+   */
+  @GetMapping("/readiness")
+  public ResponseEntity<List<TerminologyLoadStatus>> getReadiness() {
+    return ResponseEntity.status(
+            dbLoader.isReady() ? HttpStatus.OK : HttpStatus.SERVICE_UNAVAILABLE)
+        .body(dbLoader.getLoadStatus());
+  }
+
+  /**
+   * Returns size, hit, miss, eviction and coalesced lookup counters of the lookup cache of every
+   * category
+   *
+   * @return cache statistics per category
+   */
+  @GetMapping("/cache")
+  public ResponseEntity<List<TerminologyCacheStats>> getCacheStats() {
+    return ResponseEntity.ok(terminologyCache.getStats());
+  }
+
+  /**
+   * Returns the keys whose concurrent lookups waited the most on a lookup already in flight
+   *
+   * @param limit maximum number of keys, 20 when absent
+   * @return category, normalized input and number of coalesced lookups, most coalesced first
+   */
+  @GetMapping("/cache/coalesced")
+  public ResponseEntity<List<TerminologyCoalescedLookup>> getCoalescedLookups(
+      @RequestParam(name = "limit", required = false, defaultValue = "20") int limit) {
+    return ResponseEntity.ok(terminologyCache.getCoalescedLookups(Math.max(1, limit)));
+  }
+
+  /**
+   * Flushes the lookup cache
+   *
+   * @param category entity name of the category to flush ex: SnomedMedicine, all when absent
+   * @return cache statistics after the flush
+   */
+  @DeleteMapping("/cache")
+  public ResponseEntity<List<TerminologyCacheStats>> flushCache(
+      @RequestParam(name = "category", required = false) String category) {
+    terminologyCache.invalidate(category);
+    return ResponseEntity.ok(terminologyCache.getStats());
+  }
+
+  /**
+   * Returns how many lookups of every category were answered by a supplied code, by an exact
+   * display match and how many fell back to fuzzy matching
+   *
+   * @return coded, exact and fuzzy lookup counters per category
+   */
+  @GetMapping("/matches")
+  public ResponseEntity<List<TerminologyMatchStats>> getMatchStats() {
+    return ResponseEntity.ok(snomedService.getMatchStats());
+  }
+
+  /**
+   * Returns the size of the spelling correction dictionary of every category, with the number of
+   * lookups it ran and corrected since the active snapshot was loaded
+   *
+   * @return spelling correction statistics per category
+   */
+  @GetMapping("/spelling")
+  public ResponseEntity<List<SpellingCorrectionStats>> getSpellingStats() {
+    return ResponseEntity.ok(
+        terminologyIndexRegistry.latest().indexes().entrySet().stream()
+            .map(
+                entry -> {
+                  SpellingCorrector corrector = entry.getValue().getSpellingCorrector();
+                  return SpellingCorrectionStats.builder()
+                      .category(entry.getKey().getSimpleName())
+                      .maxEditDistance(corrector.getMaxEditDistance())
+                      .words(entry.getValue().vocabularySize())
+                      .deletes(corrector.deleteCount())
+                      .lookups(corrector.getLookups())
+                      .corrections(corrector.getCorrections())
+                      .build();
+                })
+            .sorted(Comparator.comparing(SpellingCorrectionStats::getCategory))
+            .toList());
+  }
+
+  /**
+   * Returns the shape of the MinHash index of every category that has one, with its lookups, their
+   * average candidates and time, and the recall measured on the sampled lookups
+   *
+   * @return locality-sensitive hashing statistics per category
+   */
+  @GetMapping("/lsh")
+  public ResponseEntity<List<MinHashStats>> getMinHashStats() {
+    return ResponseEntity.ok(
+        terminologyIndexRegistry.latest().indexes().entrySet().stream()
+            .map(
+                entry -> {
+                  MinHashIndex index = entry.getValue().getMinHashIndex();
+                  if (index == null) {
+                    return null;
+                  }
+                  long lookups = index.getLookups();
+                  return MinHashStats.builder()
+                      .category(entry.getKey().getSimpleName())
+                      .bands(index.getParameters().bands())
+                      .rows(index.getParameters().rows())
+                      .maxCandidates(index.getParameters().maxCandidates())
+                      .buckets(index.bucketCount())
+                      .lookups(lookups)
+                      .averageCandidates(
+                          lookups == 0 ? 0 : (double) index.getCandidates() / lookups)
+                      .averageMicros(lookups == 0 ? 0 : index.getNanos() / 1000.0 / lookups)
+                      .sampledLookups(index.getSampled())
+                      .sampledRecall(
+                          index.getSampled() == 0
+                              ? null
+                              : (double) index.getRecalled() / index.getSampled())
+                      .recallAtHalfSimilarity(index.recallAt(0.5))
+                      .build();
+                })
+            .filter(Objects::nonNull)
+            .sorted(Comparator.comparing(MinHashStats::getCategory))
+            .toList());
+  }
+
+  /**
+   * Re-imports the configured SNOMED CT RF2 release into the memory-mapped index in the background
+   *
+   * @return 202 when the import started, 409 when none is configured or one is already running
+   */
+  @PostMapping("/release/import")
+  public ResponseEntity<Void> importRelease() {
+    return rf2IndexLoader.importInBackground()
+        ? ResponseEntity.accepted().build()
+        : ResponseEntity.status(HttpStatus.CONFLICT).build();
+  }
+
+  /**
+   * Returns the version of the active terminology snapshot
+   *
+   * @return version, publication time and categories of the snapshot
+   */
+  @GetMapping("/version")
+  public ResponseEntity<TerminologyVersion> getVersion() {
+    TerminologySnapshot snapshot = terminologyIndexRegistry.latest();
+    return ResponseEntity.ok(
+        TerminologyVersion.builder()
+            .version(snapshot.version())
+            .loadedAt(snapshot.loadedAt().toString())
+            .categories(
+                snapshot.indexes().keySet().stream().map(Class::getSimpleName).sorted().toList())
+            .build());
+  }
+
+  /**
+   * Deletes the versions of the code lists in the shared PostgreSQL store beyond the retained ones,
+   * except those of the active snapshot
+   *
+   * @return number of versions deleted per category, 409 when the shared store is not enabled
+   */
+  @PostMapping("/store/prune")
+  public ResponseEntity<Map<String, Integer>> pruneStore() {
+    Map<String, Integer> deleted = dbLoader.pruneSharedStore();
+    return deleted.isEmpty()
+        ? ResponseEntity.status(HttpStatus.CONFLICT).build()
+        : ResponseEntity.ok(deleted);
+  }
+
+  /**
+   * Rebuilds the terminology from the configured reload directory in the background and swaps it
+   * in as a new version
+   *
+   * @return 202 when the reload started, 409 when none is configured, the startup load has not
+   *     finished or one is already running
+   */
+  @PostMapping("/reload")
+  public ResponseEntity<Void> reload() {
+    return dbLoader.reloadInBackground()
+        ? ResponseEntity.accepted().build()
+        : ResponseEntity.status(HttpStatus.CONFLICT).build();
+  }
+}
@@ -9,6 +9,10 @@ import com.nha.abdm.fhir.mapper.rest.common.constants.ErrorCode;
 import com.nha.abdm.fhir.mapper.rest.common.helpers.BundleResponse;
 import com.nha.abdm.fhir.mapper.rest.common.helpers.DocumentResource;
 import com.nha.abdm.fhir.mapper.rest.common.helpers.ErrorResponse;
+import com.nha.abdm.fhir.mapper.rest.database.h2.services.SnomedService;
+import com.nha.abdm.fhir.mapper.rest.database.h2.tables.SnomedConditionProcedure;
+import com.nha.abdm.fhir.mapper.rest.database.h2.tables.SnomedMedicine;
+import com.nha.abdm.fhir.mapper.rest.database.h2.tables.SnomedObservation;
 import com.nha.abdm.fhir.mapper.rest.dto.compositions.MakeDischargeComposition;
 import com.nha.abdm.fhir.mapper.rest.dto.resources.*;
 import com.nha.abdm.fhir.mapper.rest.exceptions.StreamUtils;
@@ -43,6 +47,7 @@ public class DischargeSummaryConverter {
   private final MakeProcedureResource makeProcedureResource;
   private final MakeDischargeComposition makeDischargeComposition;
   private final MakeCarePlanResource makeCarePlanResource;
+  private final SnomedService snomedService;
 
   public DischargeSummaryConverter(
       MakeOrganisationResource makeOrganisationResource,
@@ -60,7 +65,8 @@ public class DischargeSummaryConverter {
       MakeDiagnosticLabResource makeDiagnosticLabResource,
       MakeProcedureResource makeProcedureResource,
       MakeDischargeComposition makeDischargeComposition,
-      MakeCarePlanResource makeCarePlanResource) {
+      MakeCarePlanResource makeCarePlanResource,
+      SnomedService snomedService) {
     this.makeOrganisationResource = makeOrganisationResource;
     this.makeBundleMetaResource = makeBundleMetaResource;
     this.makePatientResource = makePatientResource;
@@ -76,6 +82,7 @@ public class DischargeSummaryConverter {
     this.makeProcedureResource = makeProcedureResource;
     this.makeDischargeComposition = makeDischargeComposition;
     this.makeCarePlanResource = makeCarePlanResource;
+    this.snomedService = snomedService;
   }
 
   public BundleResponse convertToDischargeSummary(DischargeSummaryRequest dischargeSummaryRequest)
@@ -96,6 +103,22 @@ public class DischargeSummaryConverter {
               .map(StreamUtils.wrapException(makePractitionerResource::getPractitioner))
               .collect(Collectors.toList());
 
+      Map<String, SnomedConditionProcedure> conditionCodes =
+          snomedService.resolveAll(
+              SnomedConditionProcedure.class, getConditionTerms(dischargeSummaryRequest));
+      Map<String, SnomedObservation> observationCodes =
+          snomedService.resolveAll(
+              SnomedObservation.class, getObservationTerms(dischargeSummaryRequest));
+      Map<String, SnomedMedicine> medicineCodes =
+          snomedService.resolveAll(
+              SnomedMedicine.class,
+              Optional.ofNullable(dischargeSummaryRequest.getMedications())
+                  .orElse(Collections.emptyList())
+                  .stream()
+                  .filter(prescription -> prescription.getCode() == null)
+                  .map(PrescriptionResource::getMedicine)
+                  .toList());
+
       Encounter encounter =
           makeEncounterResource.getEncounter(
               patient,
@@ -105,11 +128,12 @@ public class DischargeSummaryConverter {
               dischargeSummaryRequest.getAuthoredOn());
       List<Condition> chiefComplaintList =
           dischargeSummaryRequest.getChiefComplaints() != null
-              ? makeCheifComplaintsList(dischargeSummaryRequest, patient)
+              ? makeCheifComplaintsList(dischargeSummaryRequest, patient, conditionCodes)
               : new ArrayList<>();
       List<Observation> physicalObservationList =
           dischargeSummaryRequest.getPhysicalExaminations() != null
-              ? makePhysicalObservations(dischargeSummaryRequest, patient, practitionerList)
+              ? makePhysicalObservations(
+                  dischargeSummaryRequest, patient, practitionerList, observationCodes)
               : new ArrayList<>();
       List<AllergyIntolerance> allergieList =
           dischargeSummaryRequest.getAllergies() != null
@@ -117,7 +141,7 @@ public class DischargeSummaryConverter {
               : new ArrayList<>();
       List<Condition> medicalHistoryList =
           dischargeSummaryRequest.getMedicalHistories() != null
-              ? makeMedicalHistoryList(dischargeSummaryRequest, patient)
+              ? makeMedicalHistoryList(dischargeSummaryRequest, patient, conditionCodes)
               : new ArrayList<>();
       List<FamilyMemberHistory> familyMemberHistoryList =
           dischargeSummaryRequest.getFamilyHistories() != null
@@ -132,7 +156,8 @@ public class DischargeSummaryConverter {
                     prescriptionResource.getReason(),
                     patient,
                     dischargeSummaryRequest.getAuthoredOn(),
-                    null)
+                    null,
+                    conditionCodes.get(prescriptionResource.getReason()))
                 : null;
         medicationList.add(
             makeMedicationRequestResource.getMedicationResource(
@@ -141,7 +166,8 @@ public class DischargeSummaryConverter {
                 medicationCondition,
                 organization,
                 practitionerList,
-                patient));
+                patient,
+                medicineCodes.get(prescriptionResource.getMedicine())));
         if (medicationCondition != null) {
           medicationConditionList.add(medicationCondition);
         }
@@ -161,7 +187,10 @@ public class DischargeSummaryConverter {
                             StreamUtils.wrapException(
                                 observationResource -> {
                                   return makeObservationResource.getObservation(
-                                      patient, practitionerList, observationResource);
+                                      patient,
+                                      practitionerList,
+                                      observationResource,
+                                      observationCodes.get(observationResource.getObservation()));
                                 }))
                         .peek(diagnosticObservationList::add)
                         .toList();
@@ -385,7 +414,10 @@ public class DischargeSummaryConverter {
   }
 
   private List<Condition> makeMedicalHistoryList(
-      DischargeSummaryRequest dischargeSummaryRequest, Patient patient) throws ParseException {
+      DischargeSummaryRequest dischargeSummaryRequest,
+      Patient patient,
+      Map<String, SnomedConditionProcedure> conditionCodes)
+      throws ParseException {
     return Optional.ofNullable(dischargeSummaryRequest.getMedicalHistories())
         .orElse(Collections.emptyList())
         .stream()
@@ -393,10 +425,9 @@ public class DischargeSummaryConverter {
             StreamUtils.wrapException(
                 chiefComplaintResource ->
                     makeConditionResource.getCondition(
-                        chiefComplaintResource.getComplaint(),
+                        chiefComplaintResource,
                         patient,
-                        chiefComplaintResource.getRecordedDate(),
-                        chiefComplaintResource.getDateRange())))
+                        conditionCodes.get(chiefComplaintResource.getComplaint()))))
         .toList();
   }
 
@@ -422,7 +453,8 @@ public class DischargeSummaryConverter {
   private List<Observation> makePhysicalObservations(
       DischargeSummaryRequest dischargeSummaryRequest,
       Patient patient,
-      List<Practitioner> practitionerList)
+      List<Practitioner> practitionerList,
+      Map<String, SnomedObservation> observationCodes)
       throws ParseException {
     return Optional.ofNullable(dischargeSummaryRequest.getPhysicalExaminations())
         .orElse(Collections.emptyList())
@@ -431,12 +463,18 @@ public class DischargeSummaryConverter {
             StreamUtils.wrapException(
                 observationResource ->
                     makeObservationResource.getObservation(
-                        patient, practitionerList, observationResource)))
+                        patient,
+                        practitionerList,
+                        observationResource,
+                        observationCodes.get(observationResource.getObservation()))))
         .toList();
   }
 
   private List<Condition> makeCheifComplaintsList(
-      DischargeSummaryRequest dischargeSummaryRequest, Patient patient) throws ParseException {
+      DischargeSummaryRequest dischargeSummaryRequest,
+      Patient patient,
+      Map<String, SnomedConditionProcedure> conditionCodes)
+      throws ParseException {
     return Optional.ofNullable(dischargeSummaryRequest.getChiefComplaints())
         .orElse(Collections.emptyList())
         .stream()
@@ -444,10 +482,48 @@ public class DischargeSummaryConverter {
             StreamUtils.wrapException(
                 chiefComplaint ->
                     makeConditionResource.getCondition(
-                        chiefComplaint.getComplaint(),
+                        chiefComplaint,
                         patient,
-                        chiefComplaint.getRecordedDate(),
-                        chiefComplaint.getDateRange())))
+                        conditionCodes.get(chiefComplaint.getComplaint()))))
         .toList();
   }
+
+  // Terms resolved against SnomedConditionProcedure, looked up in one batch
+  private List<String> getConditionTerms(DischargeSummaryRequest dischargeSummaryRequest) {
+    List<String> terms = new ArrayList<>();
+    Optional.ofNullable(dischargeSummaryRequest.getChiefComplaints())
+        .orElse(Collections.emptyList())
+        .stream()
+        .filter(complaint -> complaint.getCode() == null)
+        .forEach(complaint -> terms.add(complaint.getComplaint()));
+    Optional.ofNullable(dischargeSummaryRequest.getMedicalHistories())
+        .orElse(Collections.emptyList())
+        .stream()
+        .filter(medicalHistory -> medicalHistory.getCode() == null)
+        .forEach(medicalHistory -> terms.add(medicalHistory.getComplaint()));
+    Optional.ofNullable(dischargeSummaryRequest.getMedications())
+        .orElse(Collections.emptyList())
+        .forEach(medication -> terms.add(medication.getReason()));
+    return terms;
+  }
+
+  // Terms resolved against SnomedObservation, looked up in one batch
+  private List<String> getObservationTerms(DischargeSummaryRequest dischargeSummaryRequest) {
+    List<String> terms = new ArrayList<>();
+    Optional.ofNullable(dischargeSummaryRequest.getPhysicalExaminations())
+        .orElse(Collections.emptyList())
+        .stream()
+        .filter(observation -> observation.getCode() == null)
+        .forEach(observation -> terms.add(observation.getObservation()));
+    Optional.ofNullable(dischargeSummaryRequest.getDiagnostics())
+        .orElse(Collections.emptyList())
+        .forEach(
+            diagnostic ->
+                Optional.ofNullable(diagnostic.getResult())
+                    .orElse(Collections.emptyList())
+                    .stream()
+                    .filter(observation -> observation.getCode() == null)
+                    .forEach(observation -> terms.add(observation.getObservation())));
+    return terms;
+  }
 }
@@ -9,6 +9,10 @@ import com.nha.abdm.fhir.mapper.rest.common.constants.ErrorCode;
 import com.nha.abdm.fhir.mapper.rest.common.helpers.BundleResponse;
 import com.nha.abdm.fhir.mapper.rest.common.helpers.DocumentResource;
 import com.nha.abdm.fhir.mapper.rest.common.helpers.ErrorResponse;
+import com.nha.abdm.fhir.mapper.rest.database.h2.services.SnomedService;
+import com.nha.abdm.fhir.mapper.rest.database.h2.tables.SnomedConditionProcedure;
+import com.nha.abdm.fhir.mapper.rest.database.h2.tables.SnomedMedicine;
+import com.nha.abdm.fhir.mapper.rest.database.h2.tables.SnomedObservation;
 import com.nha.abdm.fhir.mapper.rest.dto.compositions.MakeOpComposition;
 import com.nha.abdm.fhir.mapper.rest.dto.resources.*;
 import com.nha.abdm.fhir.mapper.rest.exceptions.StreamUtils;
@@ -41,6 +45,7 @@ public class OPConsultationConverter {
   private final MakeMedicationRequestResource makeMedicationRequestResource;
   private final MakeProcedureResource makeProcedureResource;
   private final MakeOpComposition makeOpComposition;
+  private final SnomedService snomedService;
 
   public OPConsultationConverter(
       MakeOrganisationResource makeOrganisationResource,
@@ -56,7 +61,8 @@ public class OPConsultationConverter {
       MakeEncounterResource makeEncounterResource,
       MakeMedicationRequestResource makeMedicationRequestResource,
       MakeProcedureResource makeProcedureResource,
-      MakeOpComposition makeOpComposition) {
+      MakeOpComposition makeOpComposition,
+      SnomedService snomedService) {
     this.makeOrganisationResource = makeOrganisationResource;
     this.makeBundleMetaResource = makeBundleMetaResource;
     this.makePatientResource = makePatientResource;
@@ -71,6 +77,7 @@ public class OPConsultationConverter {
     this.makeMedicationRequestResource = makeMedicationRequestResource;
     this.makeProcedureResource = makeProcedureResource;
     this.makeOpComposition = makeOpComposition;
+    this.snomedService = snomedService;
   }
 
   public BundleResponse convertToOPConsultationBundle(OPConsultationRequest opConsultationRequest)
@@ -85,6 +92,21 @@ public class OPConsultationConverter {
               .stream()
               .map(StreamUtils.wrapException(makePractitionerResource::getPractitioner))
               .toList();
+      Map<String, SnomedConditionProcedure> conditionCodes =
+          snomedService.resolveAll(
+              SnomedConditionProcedure.class, getConditionTerms(opConsultationRequest));
+      Map<String, SnomedObservation> observationCodes =
+          snomedService.resolveAll(
+              SnomedObservation.class, getObservationTerms(opConsultationRequest));
+      Map<String, SnomedMedicine> medicineCodes =
+          snomedService.resolveAll(
+              SnomedMedicine.class,
+              Optional.ofNullable(opConsultationRequest.getMedications())
+                  .orElse(Collections.emptyList())
+                  .stream()
+                  .filter(prescription -> prescription.getCode() == null)
+                  .map(PrescriptionResource::getMedicine)
+                  .toList());
       Encounter encounter =
           makeEncounterResource.getEncounter(
               patient,
@@ -94,11 +116,12 @@ public class OPConsultationConverter {
               opConsultationRequest.getVisitDate());
       List<Condition> chiefComplaintList =
           opConsultationRequest.getChiefComplaints() != null
-              ? makeCheifComplaintsList(opConsultationRequest, patient)
+              ? makeCheifComplaintsList(opConsultationRequest, patient, conditionCodes)
               : new ArrayList<>();
       List<Observation> physicalObservationList =
           opConsultationRequest.getPhysicalExaminations() != null
-              ? makePhysicalObservations(opConsultationRequest, patient, practitionerList)
+              ? makePhysicalObservations(
+                  opConsultationRequest, patient, practitionerList, observationCodes)
               : new ArrayList<>();
       List<AllergyIntolerance> allergieList =
           opConsultationRequest.getAllergies() != null
@@ -106,7 +129,7 @@ public class OPConsultationConverter {
               : new ArrayList<>();
       List<Condition> medicalHistoryList =
           opConsultationRequest.getMedicalHistories() != null
-              ? makeMedicalHistoryList(opConsultationRequest, patient)
+              ? makeMedicalHistoryList(opConsultationRequest, patient, conditionCodes)
               : new ArrayList<>();
       List<FamilyMemberHistory> familyMemberHistoryList =
           opConsultationRequest.getFamilyHistories() != null
@@ -127,7 +150,8 @@ public class OPConsultationConverter {
                       prescriptionResource.getReason(),
                       patient,
                       opConsultationRequest.getVisitDate(),
-                      null)
+                      null,
+                      conditionCodes.get(prescriptionResource.getReason()))
                   : null;
           medicationList.add(
               makeMedicationRequestResource.getMedicationResource(
@@ -136,7 +160,8 @@ public class OPConsultationConverter {
                   medicationCondition,
                   organization,
                   practitionerList,
-                  patient));
+                  patient,
+                  medicineCodes.get(prescriptionResource.getMedicine())));
           if (medicationCondition != null) {
             medicationConditionList.add(medicationCondition);
           }
@@ -156,7 +181,8 @@ public class OPConsultationConverter {
               : new ArrayList<>();
       List<Observation> otherObservationList =
           opConsultationRequest.getOtherObservations() != null
-              ? makeOtherObservations(patient, practitionerList, opConsultationRequest)
+              ? makeOtherObservations(
+                  patient, practitionerList, opConsultationRequest, observationCodes)
               : new ArrayList<>();
       List<DocumentReference> documentReferenceList = new ArrayList<>();
       if (Objects.nonNull(opConsultationRequest.getDocuments())) {
@@ -336,7 +362,8 @@ public class OPConsultationConverter {
   private List<Observation> makeOtherObservations(
       Patient patient,
       List<Practitioner> practitionerList,
-      OPConsultationRequest opConsultationRequest)
+      OPConsultationRequest opConsultationRequest,
+      Map<String, SnomedObservation> observationCodes)
       throws ParseException {
     return Optional.ofNullable(opConsultationRequest.getOtherObservations())
         .orElse(Collections.emptyList())
@@ -344,7 +371,11 @@ public class OPConsultationConverter {
         .map(
             StreamUtils.wrapException(
                 observation ->
-                    makeObservationResource.getObservation(patient, practitionerList, observation)))
+                    makeObservationResource.getObservation(
+                        patient,
+                        practitionerList,
+                        observation,
+                        observationCodes.get(observation.getObservation()))))
         .toList();
   }
 
@@ -437,7 +468,10 @@ public class OPConsultationConverter {
   }
 
   private List<Condition> makeMedicalHistoryList(
-      OPConsultationRequest opConsultationRequest, Patient patient) throws ParseException {
+      OPConsultationRequest opConsultationRequest,
+      Patient patient,
+      Map<String, SnomedConditionProcedure> conditionCodes)
+      throws ParseException {
     return Optional.ofNullable(opConsultationRequest.getMedicalHistories())
         .orElse(Collections.emptyList())
         .stream()
@@ -445,10 +479,9 @@ public class OPConsultationConverter {
             StreamUtils.wrapException(
                 medicalHistory ->
                     makeConditionResource.getCondition(
-                        medicalHistory.getComplaint(),
+                        medicalHistory,
                         patient,
-                        medicalHistory.getRecordedDate(),
-                        medicalHistory.getDateRange())))
+                        conditionCodes.get(medicalHistory.getComplaint()))))
         .toList();
   }
 
@@ -470,7 +503,8 @@ public class OPConsultationConverter {
   private List<Observation> makePhysicalObservations(
       OPConsultationRequest opConsultationRequest,
       Patient patient,
-      List<Practitioner> practitionerList)
+      List<Practitioner> practitionerList,
+      Map<String, SnomedObservation> observationCodes)
       throws ParseException {
     return Optional.ofNullable(opConsultationRequest.getPhysicalExaminations())
         .orElse(Collections.emptyList())
@@ -479,12 +513,18 @@ public class OPConsultationConverter {
             StreamUtils.wrapException(
                 physicalObservation ->
                     makeObservationResource.getObservation(
-                        patient, practitionerList, physicalObservation)))
+                        patient,
+                        practitionerList,
+                        physicalObservation,
+                        observationCodes.get(physicalObservation.getObservation()))))
         .toList();
   }
 
   private List<Condition> makeCheifComplaintsList(
-      OPConsultationRequest opConsultationRequest, Patient patient) throws ParseException {
+      OPConsultationRequest opConsultationRequest,
+      Patient patient,
+      Map<String, SnomedConditionProcedure> conditionCodes)
+      throws ParseException {
     return Optional.ofNullable(opConsultationRequest.getChiefComplaints())
         .orElse(Collections.emptyList())
         .stream()
@@ -492,10 +532,42 @@ public class OPConsultationConverter {
             StreamUtils.wrapException(
                 complaint ->
                     makeConditionResource.getCondition(
-                        complaint.getComplaint(),
-                        patient,
-                        complaint.getRecordedDate(),
-                        complaint.getDateRange())))
+                        complaint, patient, conditionCodes.get(complaint.getComplaint()))))
         .toList();
   }
+
+  // Terms resolved against SnomedConditionProcedure, looked up in one batch
+  private List<String> getConditionTerms(OPConsultationRequest opConsultationRequest) {
+    List<String> terms = new ArrayList<>();
+    Optional.ofNullable(opConsultationRequest.getChiefComplaints())
+        .orElse(Collections.emptyList())
+        .stream()
+        .filter(complaint -> complaint.getCode() == null)
+        .forEach(complaint -> terms.add(complaint.getComplaint()));
+    Optional.ofNullable(opConsultationRequest.getMedicalHistories())
+        .orElse(Collections.emptyList())
+        .stream()
+        .filter(medicalHistory -> medicalHistory.getCode() == null)
+        .forEach(medicalHistory -> terms.add(medicalHistory.getComplaint()));
+    Optional.ofNullable(opConsultationRequest.getMedications())
+        .orElse(Collections.emptyList())
+        .forEach(medication -> terms.add(medication.getReason()));
+    return terms;
+  }
+
+  // Terms resolved against SnomedObservation, looked up in one batch
+  private List<String> getObservationTerms(OPConsultationRequest opConsultationRequest) {
+    List<String> terms = new ArrayList<>();
+    Optional.ofNullable(opConsultationRequest.getPhysicalExaminations())
+        .orElse(Collections.emptyList())
+        .stream()
+        .filter(observation -> observation.getCode() == null)
+        .forEach(observation -> terms.add(observation.getObservation()));
+    Optional.ofNullable(opConsultationRequest.getOtherObservations())
+        .orElse(Collections.emptyList())
+        .stream()
+        .filter(observation -> observation.getCode() == null)
+        .forEach(observation -> terms.add(observation.getObservation()));
+    return terms;
+  }
 }
\ No newline at end of file
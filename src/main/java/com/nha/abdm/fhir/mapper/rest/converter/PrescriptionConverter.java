@@ -9,6 +9,9 @@ import com.nha.abdm.fhir.mapper.rest.common.constants.ResourceProfileIdentifier;
 import com.nha.abdm.fhir.mapper.rest.common.helpers.BundleResponse;
 import com.nha.abdm.fhir.mapper.rest.common.helpers.DocumentResource;
 import com.nha.abdm.fhir.mapper.rest.common.helpers.ErrorResponse;
+import com.nha.abdm.fhir.mapper.rest.database.h2.services.SnomedService;
+import com.nha.abdm.fhir.mapper.rest.database.h2.tables.SnomedConditionProcedure;
+import com.nha.abdm.fhir.mapper.rest.database.h2.tables.SnomedMedicine;
 import com.nha.abdm.fhir.mapper.rest.dto.compositions.MakePrescriptionComposition;
 import com.nha.abdm.fhir.mapper.rest.dto.resources.*;
 import com.nha.abdm.fhir.mapper.rest.exceptions.StreamUtils;
@@ -35,6 +38,7 @@ public class PrescriptionConverter {
   private final MakeEncounterResource makeEncounterResource;
   private final MakePrescriptionComposition makePrescriptionComposition;
   private final MakeConditionResource makeConditionResource;
+  private final SnomedService snomedService;
 
   public PrescriptionConverter(
       MakeOrganisationResource makeOrganisationResource,
@@ -44,7 +48,8 @@ public class PrescriptionConverter {
       MakeMedicationRequestResource makeMedicationRequestResource,
       MakeEncounterResource makeEncounterResource,
       MakePrescriptionComposition makePrescriptionComposition,
-      MakeConditionResource makeConditionResource) {
+      MakeConditionResource makeConditionResource,
+      SnomedService snomedService) {
     this.makeOrganisationResource = makeOrganisationResource;
     this.makePatientResource = makePatientResource;
     this.makePractitionerResource = makePractitionerResource;
@@ -53,6 +58,7 @@ public class PrescriptionConverter {
     this.makeEncounterResource = makeEncounterResource;
     this.makePrescriptionComposition = makePrescriptionComposition;
     this.makeConditionResource = makeConditionResource;
+    this.snomedService = snomedService;
   }
 
   public BundleResponse convertToPrescriptionBundle(PrescriptionRequest prescriptionRequest)
@@ -73,11 +79,28 @@ public class PrescriptionConverter {
               .toList();
       List<MedicationRequest> medicationRequestList = new ArrayList<>();
       List<Condition> medicationConditionList = new ArrayList<>();
+      Map<String, SnomedMedicine> medicineCodes =
+          snomedService.resolveAll(
+              SnomedMedicine.class,
+              prescriptionRequest.getPrescriptions().stream()
+                  .filter(prescription -> prescription.getCode() == null)
+                  .map(PrescriptionResource::getMedicine)
+                  .toList());
+      Map<String, SnomedConditionProcedure> reasonCodes =
+          snomedService.resolveAll(
+              SnomedConditionProcedure.class,
+              prescriptionRequest.getPrescriptions().stream()
+                  .map(PrescriptionResource::getReason)
+                  .toList());
       for (PrescriptionResource item : prescriptionRequest.getPrescriptions()) {
         Condition condition =
             item.getReason() != null
                 ? makeConditionResource.getCondition(
-                    item.getReason(), patient, prescriptionRequest.getAuthoredOn(), null)
+                    item.getReason(),
+                    patient,
+                    prescriptionRequest.getAuthoredOn(),
+                    null,
+                    reasonCodes.get(item.getReason()))
                 : null;
         medicationRequestList.add(
             makeMedicationRequestResource.getMedicationResource(
@@ -86,7 +109,8 @@ public class PrescriptionConverter {
                 condition,
                 organization,
                 practitionerList,
-                patient));
+                patient,
+                medicineCodes.get(item.getMedicine())));
         if (condition != null) {
           medicationConditionList.add(condition);
         }
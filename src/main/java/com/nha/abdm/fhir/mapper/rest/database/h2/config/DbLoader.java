@@ -1,144 +1,607 @@
 /* (C) 2024 */
 package com.nha.abdm.fhir.mapper.rest.database.h2.config;
 
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.MappingIterator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.nha.abdm.fhir.mapper.rest.common.helpers.TerminologyLoadStatus;
+import com.nha.abdm.fhir.mapper.rest.database.h2.index.MinHashIndex;
+import com.nha.abdm.fhir.mapper.rest.database.h2.index.TerminologyIndex;
+import com.nha.abdm.fhir.mapper.rest.database.h2.index.TerminologyIndexRegistry;
+import com.nha.abdm.fhir.mapper.rest.database.h2.index.TerminologySnapshot;
+import com.nha.abdm.fhir.mapper.rest.database.h2.services.Displayable;
+import com.nha.abdm.fhir.mapper.rest.database.h2.services.PostgresTerminologySearch;
+import com.nha.abdm.fhir.mapper.rest.database.h2.services.SnomedCodeListCache;
+import com.nha.abdm.fhir.mapper.rest.database.h2.services.TerminologyCache;
+import com.nha.abdm.fhir.mapper.rest.database.h2.services.TerminologyWarmCache;
 import com.nha.abdm.fhir.mapper.rest.database.h2.tables.*;
 import jakarta.annotation.PostConstruct;
-import jakarta.persistence.EntityManager;
-import jakarta.transaction.Transactional;
+import jakarta.persistence.Table;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.List;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.ApplicationContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
 import org.springframework.core.io.Resource;
 import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
-import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.support.TransactionTemplate;
 
 @Component
 public class DbLoader {
-  private final ApplicationContext applicationContext;
   private final ObjectMapper dbMapper;
   private static final Logger log = LoggerFactory.getLogger(DbLoader.class);
 
-  @Autowired private PlatformTransactionManager transactionManager;
+  @Autowired private TerminologyIndexRegistry terminologyIndexRegistry;
+  @Autowired private TerminologyCache terminologyCache;
+  @Autowired private ApplicationEventPublisher eventPublisher;
+  @Autowired private SnomedCodeListCache snomedCodeListCache;
+  @Autowired private TerminologyWarmCache terminologyWarmCache;
+  @Autowired private LuceneIndexLoader luceneIndexLoader;
+  @Autowired private PostgresTerminologySearch postgresTerminologySearch;
+  @Autowired private Environment environment;
 
-  public DbLoader(ApplicationContext applicationContext) {
-    this.applicationContext = applicationContext;
+  @Autowired(required = false)
+  private PlatformTransactionManager transactionManager;
+
+  @Autowired(required = false)
+  private JdbcTemplate jdbcTemplate;
+
+  @Value("${fhir.mapper.terminology.loader.threads:0}")
+  private int loaderThreads;
+
+  @Value("${fhir.mapper.terminology.loader.async:false}")
+  private boolean asyncLoad;
+
+  @Value("${fhir.mapper.terminology.store:database}")
+  private String store;
+
+  @Value("${fhir.mapper.terminology.reload-dir:}")
+  private String reloadDir;
+
+  @Value("${fhir.mapper.terminology.spelling.max-edit-distance:2}")
+  private int spellingMaxEditDistance;
+
+  @Value("${fhir.mapper.terminology.spelling.prefix-length:7}")
+  private int spellingPrefixLength;
+
+  @Value("${fhir.mapper.terminology.phonetic.categories:SnomedMedicine,SnomedConditionProcedure}")
+  private Set<String> phoneticCategories;
+
+  @Value("${fhir.mapper.terminology.medication.structured-index:true}")
+  private boolean structuredMedicationIndex;
+
+  @Value("${fhir.mapper.terminology.lsh.categories:}")
+  private Set<String> lshCategories;
+
+  @Value("${fhir.mapper.terminology.lsh.bands:32}")
+  private int lshBands;
+
+  @Value("${fhir.mapper.terminology.lsh.rows:2}")
+  private int lshRows;
+
+  @Value("${fhir.mapper.terminology.lsh.max-candidates:200}")
+  private int lshMaxCandidates;
+
+  @Value("${fhir.mapper.terminology.lsh.sample-rate:0.01}")
+  private double lshSampleRate;
+
+  private static final int INSERT_BATCH_SIZE = 500;
+  private static final List<String> TERMINOLOGY_LOCATIONS =
+      List.of("classpath:/snomed/*.json", "classpath:/loinc/*.json");
+  private static final DateTimeFormatter VERSION_FORMAT =
+      DateTimeFormatter.ofPattern("yyyyMMdd'T'HHmmss").withZone(ZoneOffset.UTC);
+  private final Map<String, TerminologyLoadStatus> loadStatus = new ConcurrentHashMap<>();
+  private final AtomicBoolean reloading = new AtomicBoolean();
+  private volatile boolean ready;
+  private boolean applicationStarted;
+
+  public DbLoader() {
     this.dbMapper = new ObjectMapper();
   }
 
+  /**
+   * Loads every category, either before the context finishes starting, failing the startup when a
+   * category does not load, or, with {@code fhir.mapper.terminology.loader.async=true}, on a
+   * background thread while the server already accepts connections and stays unready.
+   */
   @PostConstruct
   public void loadData() throws IOException {
     PathMatchingResourcePatternResolver resolver = new PathMatchingResourcePatternResolver();
-    Resource[] resources = resolver.getResources("classpath:/snomed/*.json");
+    List<Resource> resources = new ArrayList<>();
+    for (String location : TERMINOLOGY_LOCATIONS) {
+      resources.addAll(List.of(resolver.getResources(location)));
+    }
 
-    if (resources == null || resources.length == 0) {
+    if (resources.isEmpty()) {
       throw new IllegalStateException(
-          "No JSON files found in the 'snomed' folder on the classpath.");
+          "No JSON files found in the 'snomed' or 'loinc' folders on the classpath.");
     }
 
-    TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
-
-    transactionTemplate.execute(
-        status -> {
-          try {
-            for (Resource resource : resources) {
-              processResource(resource);
-            }
-          } catch (Exception e) {
-            status.setRollbackOnly();
-            throw new RuntimeException("Error loading data", e);
-          }
-          return null;
-        });
-  }
-
-  private void processResource(Resource resource) {
-    try (InputStream inputStream = resource.getInputStream()) {
+    List<Resource> categories = new ArrayList<>();
+    for (Resource resource : resources) {
       String fileName = resource.getFilename();
       if (fileName == null || !fileName.endsWith(".json")) {
         log.warn("Skipping invalid resource: {}", fileName);
-        return;
+        continue;
       }
-
       String entityName = fileName.replace(".json", "");
-      String beanName = entityName.substring(0, 1).toLowerCase() + entityName.substring(1) + "Repo";
+      if (getEntityType(entityName) == null) {
+        log.info("No terminology table found for {}", entityName);
+        continue;
+      }
+      categories.add(resource);
+      updateStatus(entityName, TerminologyLoadStatus.State.PENDING, 0, 0, null);
+    }
+
+    postgresTerminologySearch.createTables();
+
+    if (asyncLoad) {
+      Thread warmUp = new Thread(() -> loadCategories(categories), "terminology-warm-up");
+      warmUp.setDaemon(true);
+      warmUp.start();
+    } else if (loadCategories(categories) > 0) {
+      throw new IllegalStateException(
+          "Error loading terminology: "
+              + loadStatus.values().stream()
+                  .filter(status -> status.getState() == TerminologyLoadStatus.State.FAILED)
+                  .map(TerminologyLoadStatus::getCategory)
+                  .sorted()
+                  .toList());
+    }
+  }
+
+  /**
+   * Loads the categories concurrently and, when all of them loaded, marks the terminology ready.
+   *
+   * @return number of categories that failed to load
+   */
+  private long loadCategories(List<Resource> categories) {
+    long start = System.nanoTime();
+    ExecutorService executor = newLoaderPool(categories.size());
+    try {
+      List<CompletableFuture<Void>> loads = new ArrayList<>();
+      for (Resource resource : categories) {
+        loads.add(CompletableFuture.runAsync(() -> processResource(resource), executor));
+      }
+      CompletableFuture.allOf(loads.toArray(new CompletableFuture[0])).join();
+    } finally {
+      executor.shutdown();
+    }
+
+    long failed =
+        loadStatus.values().stream()
+            .filter(status -> status.getState() == TerminologyLoadStatus.State.FAILED)
+            .count();
+    log.info(
+        "Loaded {} of {} terminology categories in {} ms",
+        categories.size() - failed,
+        categories.size(),
+        toMillis(System.nanoTime() - start));
+    if (failed == 0) {
+      publish(
+          TerminologyIndexRegistry.INITIAL_VERSION, terminologyIndexRegistry.latest().indexes());
+      pruneSharedStoreQuietly();
+      luceneIndexLoader.load();
+      terminologyWarmCache.load();
+      markReady();
+    }
+    return failed;
+  }
+
+  /** True once every category is loaded and indexed. */
+  public boolean isReady() {
+    return ready;
+  }
 
-      if (applicationContext.containsBean(beanName)) {
+  /**
+   * Spring Boot reports the application as accepting traffic once the context is up; keep it
+   * refusing until the terminology is loaded.
+   */
+  @EventListener
+  public synchronized void onReadinessChange(AvailabilityChangeEvent<ReadinessState> event) {
+    if (event.getState() == ReadinessState.ACCEPTING_TRAFFIC && !ready) {
+      applicationStarted = true;
+      AvailabilityChangeEvent.publish(eventPublisher, this, ReadinessState.REFUSING_TRAFFIC);
+    }
+  }
 
-        JpaRepository<Object, ?> repository =
-            (JpaRepository<Object, ?>) applicationContext.getBean(beanName);
+  private synchronized void markReady() {
+    ready = true;
+    if (applicationStarted) {
+      AvailabilityChangeEvent.publish(eventPublisher, this, ReadinessState.ACCEPTING_TRAFFIC);
+    }
+  }
 
-        List<Object> entities =
-            (List<Object>) dbMapper.readValue(inputStream, getTypeReference(entityName));
-        repository.saveAll(entities);
+  /** Current load state of every terminology category, ordered by category. */
+  public List<TerminologyLoadStatus> getLoadStatus() {
+    List<TerminologyLoadStatus> statuses = new ArrayList<>(loadStatus.values());
+    statuses.sort(Comparator.comparing(TerminologyLoadStatus::getCategory));
+    return statuses;
+  }
 
-        log.info("Loaded {} records into {}", entities.size(), entityName);
+  /**
+   * Rebuilds the terminology from the JSON files in {@code fhir.mapper.terminology.reload-dir} on a
+   * background thread and publishes it as a new snapshot version. Refused until every category is
+   * loaded, as the startup load still registers its indexes into the latest snapshot until then.
+   *
+   * @return false when no reload directory is configured, the terminology is not loaded yet or a
+   *     reload is already running
+   */
+  public boolean reloadInBackground() {
+    if (reloadDir.isBlank() || !ready || !reloading.compareAndSet(false, true)) {
+      return false;
+    }
+    Thread reloader =
+        new Thread(
+            () -> {
+              try {
+                reload(Path.of(reloadDir));
+              } catch (Exception e) {
+                log.error("Error reloading terminology from {}", reloadDir, e);
+              } finally {
+                reloading.set(false);
+              }
+            },
+            "terminology-reload");
+    reloader.setDaemon(true);
+    reloader.start();
+    return true;
+  }
 
-        addIndexesTransactional(entityName);
-      } else {
-        log.info("No repository bean found for {}", entityName);
+  /**
+   * Builds new indexes for the categories found in {@code directory}, keeps the current index of
+   * the others and swaps the result in as one snapshot. The version is the content of a {@code
+   * version.txt} in the directory, or the reload time, followed by the snapshot fingerprint.
+   *
+   * <p>The shared PostgreSQL store gets the reloaded lists as new versions next to the ones older
+   * snapshots, here or on other instances, still search; only a local database is rewritten.
+   */
+  private void reload(Path directory) throws IOException {
+    long start = System.nanoTime();
+    Map<Class<?>, TerminologyIndex<?>> indexes =
+        new HashMap<>(terminologyIndexRegistry.latest().indexes());
+    Map<Class<? extends Displayable>, List<? extends Displayable>> reloaded = new HashMap<>();
+    List<Path> files;
+    try (Stream<Path> list = Files.list(directory)) {
+      files = list.filter(file -> file.toString().endsWith(".json")).sorted().toList();
+    }
+    for (Path file : files) {
+      String entityName = file.getFileName().toString().replace(".json", "");
+      Class<? extends Displayable> entityType = getEntityType(entityName);
+      if (entityType == null) {
+        log.info("No terminology table found for {}", entityName);
+        continue;
       }
+      try (InputStream inputStream = Files.newInputStream(file)) {
+        List<? extends Displayable> entities = readEntities(inputStream, entityType);
+        indexes.put(entityType, buildIndex(entityType, entities));
+        reloaded.put(entityType, entities);
+      }
+    }
+    if (reloaded.isEmpty()) {
+      log.warn("No terminology files found in {}", directory);
+      return;
+    }
+
+    if (persistToDatabase()) {
+      new TransactionTemplate(transactionManager)
+          .executeWithoutResult(
+              status ->
+                  reloaded.forEach(
+                      (type, entities) -> {
+                        if (postgresTerminologySearch.isEnabled()) {
+                          storeShared(type, indexes.get(type), entities);
+                        } else {
+                          jdbcTemplate.update(
+                              "DELETE FROM \"" + type.getAnnotation(Table.class).name() + "\"");
+                          insertEntities(type, entities);
+                        }
+                      }));
+    }
+
+    Path versionFile = directory.resolve("version.txt");
+    String version =
+        publish(
+                Files.exists(versionFile)
+                    ? Files.readString(versionFile).trim()
+                    : VERSION_FORMAT.format(Instant.now()),
+                indexes)
+            .version();
+    pruneSharedStoreQuietly();
+    luceneIndexLoader.load();
+    terminologyCache.invalidate(null);
+    snomedCodeListCache.invalidate();
+    reloaded.forEach(
+        (type, entities) ->
+            updateStatus(
+                type.getSimpleName(),
+                TerminologyLoadStatus.State.LOADED,
+                entities.size(),
+                toMillis(System.nanoTime() - start),
+                null));
+    log.info(
+        "Published terminology version {} with {} reloaded categories in {} ms",
+        version,
+        reloaded.size(),
+        toMillis(System.nanoTime() - start));
+  }
+
+  /**
+   * Publishes the indexes as the latest snapshot, versioned {@code label} followed by their
+   * fingerprint, ex: classpath+5f1c09a2d4e7b3c8, so that one label never names two different code
+   * lists in the lookup cache keys, the code list ETags or the persisted caches.
+   */
+  private TerminologySnapshot publish(String label, Map<Class<?>, TerminologyIndex<?>> indexes) {
+    String fingerprint = new TerminologySnapshot(label, Instant.now(), indexes).fingerprint();
+    TerminologySnapshot snapshot =
+        new TerminologySnapshot(label + '+' + fingerprint, Instant.now(), indexes);
+    terminologyIndexRegistry.publish(snapshot);
+    return snapshot;
+  }
+
+  /**
+   * Loads one category in its own transaction. The index is registered only once the rows are
+   * committed, and a failure is recorded against the category without affecting the others. In
+   * the shared PostgreSQL store, only the first instance to load a version of the list writes it.
+   */
+  private void processResource(Resource resource) {
+    String entityName = resource.getFilename().replace(".json", "");
+    Class<? extends Displayable> entityType = getEntityType(entityName);
+    updateStatus(entityName, TerminologyLoadStatus.State.LOADING, 0, 0, null);
+    long start = System.nanoTime();
+    try (InputStream inputStream = resource.getInputStream()) {
+      List<? extends Displayable> entities = readEntities(inputStream, entityType);
+      long parsed = System.nanoTime();
+      TerminologyIndex<? extends Displayable> index = buildIndex(entityType, entities);
+      long indexed = System.nanoTime();
+      int rows = 0;
+      if (persistToDatabase()) {
+        rows =
+            new TransactionTemplate(transactionManager)
+                .execute(
+                    status ->
+                        postgresTerminologySearch.isEnabled()
+                            ? storeShared(entityType, index, entities)
+                            : insertEntities(entityType, entities));
+      }
+      long inserted = System.nanoTime();
+      registerIndex(entityType, index);
+      terminologyCache.invalidate(entityName);
+
+      updateStatus(
+          entityName,
+          TerminologyLoadStatus.State.LOADED,
+          entities.size(),
+          toMillis(inserted - start),
+          null);
+      log.info(
+          "Loaded {} records ({} rows) into {} in {} ms (parse {} ms, index {} ms, insert {} ms)",
+          entities.size(),
+          rows,
+          entityName,
+          toMillis(inserted - start),
+          toMillis(parsed - start),
+          toMillis(indexed - parsed),
+          toMillis(inserted - indexed));
     } catch (Exception e) {
+      updateStatus(
+          entityName,
+          TerminologyLoadStatus.State.FAILED,
+          0,
+          toMillis(System.nanoTime() - start),
+          e.getMessage());
       log.error("Error processing resource: {}", resource.getFilename(), e);
-      throw new RuntimeException(e);
     }
   }
 
-  private TypeReference<?> getTypeReference(String entityName) {
-    return switch (entityName) {
-      case "SnomedConditionProcedure" -> new TypeReference<List<SnomedConditionProcedure>>() {};
-      case "SnomedDiagnostic" -> new TypeReference<List<SnomedDiagnostic>>() {};
-      case "SnomedEncounter" -> new TypeReference<List<SnomedEncounter>>() {};
-      case "SnomedMedicineRoute" -> new TypeReference<List<SnomedMedicineRoute>>() {};
-      case "SnomedMedicine" -> new TypeReference<List<SnomedMedicine>>() {};
-      case "SnomedObservation" -> new TypeReference<List<SnomedObservation>>() {};
-      case "SnomedSpecimen" -> new TypeReference<List<SnomedSpecimen>>() {};
-      case "SnomedVaccine" -> new TypeReference<List<SnomedVaccine>>() {};
-      default -> throw new IllegalArgumentException("Unknown entity name: " + entityName);
-    };
+  /**
+   * In the {@code memory} store the concepts only live in the in-memory index and no datasource is
+   * configured.
+   */
+  private boolean persistToDatabase() {
+    return !"memory".equalsIgnoreCase(store) && jdbcTemplate != null;
+  }
+
+  private void updateStatus(
+      String category,
+      TerminologyLoadStatus.State state,
+      int records,
+      long loadTimeMs,
+      String error) {
+    loadStatus.put(
+        category,
+        TerminologyLoadStatus.builder()
+            .category(category)
+            .state(state)
+            .records(records)
+            .loadTimeMs(loadTimeMs)
+            .error(error)
+            .build());
   }
 
-  @Transactional
-  public void addIndexesTransactional(String entityName) {
+  private ExecutorService newLoaderPool(int categories) {
+    int threads = loaderThreads > 0 ? loaderThreads : Runtime.getRuntime().availableProcessors();
+    AtomicInteger counter = new AtomicInteger();
+    return Executors.newFixedThreadPool(
+        Math.max(1, Math.min(threads, categories)),
+        runnable -> {
+          Thread thread = new Thread(runnable, "terminology-loader-" + counter.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
+        });
+  }
+
+  /**
+   * Streams the elements of the top level JSON array instead of binding the whole document. A code
+   * listed more than once keeps its first position and its last display, as {@code saveAll} used
+   * to, so the table and the index are built from the same concepts.
+   */
+  private <T extends Displayable> List<T> readEntities(InputStream inputStream, Class<T> type)
+      throws IOException {
+    Map<String, T> byCode = new LinkedHashMap<>();
+    try (MappingIterator<T> iterator = dbMapper.readerFor(type).readValues(inputStream)) {
+      while (iterator.hasNextValue()) {
+        T entity = iterator.nextValue();
+        byCode.put(entity.getCode(), entity);
+      }
+    }
+    return new ArrayList<>(byCode.values());
+  }
 
-    String tableName = "\"" + convertToSnakeCase(entityName) + "\"";
-    String indexName = "idx_" + convertToSnakeCase(entityName) + "_display_code";
+  /**
+   * Inserts the concepts with batched JDBC statements, bypassing the persistence context. LOINC
+   * codes also carry their wellness category.
+   *
+   * @return number of rows inserted
+   */
+  private int insertEntities(
+      Class<? extends Displayable> type, List<? extends Displayable> entities) {
+    boolean loinc = type == LoincObservation.class;
     String sql =
-        switch (entityName) {
-          case "SnomedEncounter" ->
-              "CREATE INDEX " + indexName + " ON " + tableName + " (\"code\", \"display\");";
-          case "SnomedDiagnostic" ->
-              "CREATE INDEX " + indexName + " ON " + tableName + " (\"code\", \"display\");";
-          case "SnomedConditionProcedure" ->
-              "CREATE INDEX " + indexName + " ON " + tableName + " (\"code\", \"display\");";
-          case "SnomedMedicineRoute" ->
-              "CREATE INDEX " + indexName + " ON " + tableName + " (\"code\", \"display\");";
-          case "SnomedMedicine" ->
-              "CREATE INDEX " + indexName + " ON " + tableName + " (\"code\", \"display\");";
-          case "SnomedObservation" ->
-              "CREATE INDEX " + indexName + " ON " + tableName + " (\"code\", \"display\");";
-          case "SnomedSpecimen" ->
-              "CREATE INDEX " + indexName + " ON " + tableName + " (\"code\", \"display\");";
-          case "SnomedVaccine" ->
-              "CREATE INDEX " + indexName + " ON " + tableName + " (\"code\", \"display\");";
-          default -> null;
-        };
-
-    if (sql != null) {
-      EntityManager em = applicationContext.getBean(EntityManager.class);
-      em.createNativeQuery(sql).executeUpdate();
-    }
-  }
-
-  private String convertToSnakeCase(String className) {
-    return className.replaceAll("([a-z])([A-Z])", "$1_$2").toLowerCase();
+        "INSERT INTO \""
+            + type.getAnnotation(Table.class).name()
+            + (loinc
+                ? "\" (\"code\", \"display\", \"type\", \"category\") VALUES (?, ?, ?, ?)"
+                : "\" (\"code\", \"display\", \"type\") VALUES (?, ?, ?)");
+    jdbcTemplate.batchUpdate(
+        sql,
+        entities,
+        INSERT_BATCH_SIZE,
+        (statement, entity) -> {
+          statement.setString(1, entity.getCode());
+          statement.setString(2, entity.getDisplay());
+          statement.setString(3, entity.getType());
+          if (loinc) {
+            statement.setString(4, ((LoincObservation) entity).getCategory());
+          }
+        });
+    return entities.size();
+  }
+
+  /**
+   * Stores the list as a version of the category in the shared PostgreSQL store, when the store
+   * ranks its lookups.
+   *
+   * @return number of rows inserted, 0 when the version was stored already
+   */
+  /**
+   * Deletes the versions of the code lists in the shared PostgreSQL store beyond the retained
+   * ones, keeping those of the active snapshot, one category per transaction.
+   *
+   * @return number of versions deleted per category, empty when the store is not enabled
+   */
+  public Map<String, Integer> pruneSharedStore() {
+    Map<String, Integer> deleted = new TreeMap<>();
+    if (!postgresTerminologySearch.isEnabled()) {
+      return deleted;
+    }
+    terminologyIndexRegistry
+        .latest()
+        .indexes()
+        .forEach(
+            (type, index) -> {
+              if (postgresTerminologySearch.ranks(type)) {
+                deleted.put(
+                    type.getSimpleName(),
+                    new TransactionTemplate(transactionManager)
+                        .execute(
+                            status ->
+                                postgresTerminologySearch.prune(
+                                    type, Set.of(index.fingerprint()))));
+              }
+            });
+    return deleted;
+  }
+
+  /** Prunes the shared store after a load; a failure is logged and left to the next load. */
+  private void pruneSharedStoreQuietly() {
+    try {
+      pruneSharedStore();
+    } catch (RuntimeException e) {
+      log.warn("Pruning the shared terminology store failed", e);
+    }
+  }
+
+  private int storeShared(
+      Class<?> type, TerminologyIndex<?> index, List<? extends Displayable> entities) {
+    return postgresTerminologySearch.ranks(type)
+        ? postgresTerminologySearch.store(type, index.fingerprint(), entities)
+        : 0;
+  }
+
+  @SuppressWarnings("unchecked")
+  private <T extends Displayable> void registerIndex(Class<T> type, TerminologyIndex<?> index) {
+    terminologyIndexRegistry.register(type, (TerminologyIndex<T>) index);
+  }
+
+  /**
+   * Builds the index of a category. When the shared PostgreSQL store ranks its fuzzy lookups, the
+   * spelling, phonetic, trigram and MinHash structures only those lookups use are left out.
+   */
+  private <T extends Displayable> TerminologyIndex<T> buildIndex(
+      Class<?> type, List<T> entities) {
+    boolean fuzzy = !postgresTerminologySearch.ranks(type);
+    return TerminologyIndex.build(
+        entities,
+        new TerminologyIndex.Settings(
+            fuzzy ? spellingMaxEditDistance : 0,
+            spellingPrefixLength,
+            fuzzy,
+            fuzzy && phoneticCategories.contains(type.getSimpleName()),
+            structuredMedicationIndex && type == SnomedMedicine.class,
+            fuzzy ? minHashParameters(type.getSimpleName()) : null));
+  }
+
+  /**
+   * MinHash shape of the category when it is listed in {@code lsh.categories}, where {@code
+   * lsh.<category>.bands}, {@code .rows} and {@code .max-candidates} override the shared values.
+   */
+  private MinHashIndex.Parameters minHashParameters(String category) {
+    if (!lshCategories.contains(category)) {
+      return null;
+    }
+    String prefix = "fhir.mapper.terminology.lsh." + category;
+    return new MinHashIndex.Parameters(
+        environment.getProperty(prefix + ".bands", Integer.class, lshBands),
+        environment.getProperty(prefix + ".rows", Integer.class, lshRows),
+        environment.getProperty(prefix + ".max-candidates", Integer.class, lshMaxCandidates),
+        lshSampleRate);
+  }
+
+  private Class<? extends Displayable> getEntityType(String entityName) {
+    return switch (entityName) {
+      case "SnomedConditionProcedure" -> SnomedConditionProcedure.class;
+      case "SnomedDiagnostic" -> SnomedDiagnostic.class;
+      case "SnomedEncounter" -> SnomedEncounter.class;
+      case "SnomedMedicineRoute" -> SnomedMedicineRoute.class;
+      case "SnomedMedicine" -> SnomedMedicine.class;
+      case "SnomedObservation" -> SnomedObservation.class;
+      case "SnomedSpecimen" -> SnomedSpecimen.class;
+      case "SnomedVaccine" -> SnomedVaccine.class;
+      case "LoincObservation" -> LoincObservation.class;
+      default -> null;
+    };
+  }
+
+  private static long toMillis(long nanos) {
+    return TimeUnit.NANOSECONDS.toMillis(nanos);
   }
 }
@@ -0,0 +1,139 @@
+/* (C) 2024 */
+package com.nha.abdm.fhir.mapper.rest.database.h2.config;
+
+import com.nha.abdm.fhir.mapper.rest.database.h2.index.LuceneTerminologyIndex;
+import com.nha.abdm.fhir.mapper.rest.database.h2.index.MappedTerminologyIndex;
+import com.nha.abdm.fhir.mapper.rest.database.h2.index.TerminologyIndexRegistry;
+import com.nha.abdm.fhir.mapper.rest.database.h2.index.TerminologySnapshot;
+import com.nha.abdm.fhir.mapper.rest.database.h2.services.Displayable;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Serves the fuzzy lookups from a Lucene index in {@code fhir.mapper.terminology.lucene.dir}
+ * instead of the in-memory index. The index is written once from the loaded code lists; a restart
+ * only maps the existing segments when their commit data records the same terminology version and
+ * a hash of the very same codes and displays.
+ */
+@Component
+public class LuceneIndexLoader {
+  private static final Logger log = LoggerFactory.getLogger(LuceneIndexLoader.class);
+
+  @Autowired private TerminologyIndexRegistry terminologyIndexRegistry;
+
+  @Value("${fhir.mapper.terminology.lucene.dir:}")
+  private String indexDir;
+
+  @Value("${fhir.mapper.terminology.lucene.ranking:cosine}")
+  private String ranking;
+
+  /**
+   * Opens the index built from the latest snapshot, or rebuilds it when it is missing or was built
+   * from other code lists. Called once every category is loaded and after every reload.
+   */
+  public synchronized void load() {
+    if (indexDir.isBlank()) {
+      return;
+    }
+    long start = System.nanoTime();
+    TerminologySnapshot snapshot = terminologyIndexRegistry.latest();
+    Path dir = Path.of(indexDir);
+    LuceneTerminologyIndex.Ranking order =
+        LuceneTerminologyIndex.Ranking.valueOf(ranking.trim().toUpperCase(Locale.ROOT));
+    try {
+      Map<String, List<MappedTerminologyIndex.Entry>> entries = entries(snapshot);
+      LuceneTerminologyIndex index = Files.isDirectory(dir) ? open(dir, order) : null;
+      if (index != null && !builtFrom(index, snapshot, entries)) {
+        index.close();
+        index = null;
+      }
+      if (index == null) {
+        Files.createDirectories(dir);
+        LuceneTerminologyIndex.write(
+            dir,
+            entries,
+            Map.of(
+                LuceneTerminologyIndex.VERSION, snapshot.version(),
+                LuceneTerminologyIndex.FINGERPRINT, snapshot.fingerprint()));
+        index = LuceneTerminologyIndex.open(dir, order);
+        log.info(
+            "Indexed terminology version {} with Lucene in {} ms",
+            snapshot.version(),
+            TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+      } else {
+        log.info("Opened the Lucene index of terminology version {}", snapshot.version());
+      }
+      close(terminologyIndexRegistry.registerLucene(index));
+    } catch (IOException | RuntimeException e) {
+      log.error("Could not load the Lucene index in {}, using the in-memory index", indexDir, e);
+    }
+  }
+
+  @PreDestroy
+  public void closeIndex() {
+    close(terminologyIndexRegistry.registerLucene(null));
+  }
+
+  private static LuceneTerminologyIndex open(Path dir, LuceneTerminologyIndex.Ranking order) {
+    try {
+      return LuceneTerminologyIndex.open(dir, order);
+    } catch (IOException e) {
+      log.warn("Could not open the Lucene index in {}, it will be rebuilt", dir, e);
+      return null;
+    }
+  }
+
+  /**
+   * Whether the index was written from the entries of the snapshot. The version and fingerprint
+   * alone are not enough, ex: an index written by an older build under the same version.
+   */
+  private static boolean builtFrom(
+      LuceneTerminologyIndex index,
+      TerminologySnapshot snapshot,
+      Map<String, List<MappedTerminologyIndex.Entry>> entries) {
+    Map<String, String> commitData = index.getCommitData();
+    return snapshot.version().equals(commitData.get(LuceneTerminologyIndex.VERSION))
+        && snapshot.fingerprint().equals(commitData.get(LuceneTerminologyIndex.FINGERPRINT))
+        && LuceneTerminologyIndex.contentHash(entries)
+            .equals(commitData.get(LuceneTerminologyIndex.CONTENT_HASH));
+  }
+
+  private static Map<String, List<MappedTerminologyIndex.Entry>> entries(
+      TerminologySnapshot snapshot) {
+    Map<String, List<MappedTerminologyIndex.Entry>> entries = new HashMap<>();
+    snapshot
+        .indexes()
+        .forEach(
+            (type, index) -> {
+              List<MappedTerminologyIndex.Entry> category = new ArrayList<>(index.size());
+              for (Displayable concept : index.getDistinctConcepts()) {
+                if (concept.getCode() != null && concept.getDisplay() != null) {
+                  category.add(
+                      new MappedTerminologyIndex.Entry(concept.getCode(), concept.getDisplay()));
+                }
+              }
+              entries.put(type.getSimpleName(), category);
+            });
+    return entries;
+  }
+
+  private static void close(LuceneTerminologyIndex index) {
+    if (index == null) {
+      return;
+    }
+    try {
+      index.close();
+    } catch (IOException e) {
+      log.warn("Could not close the previous Lucene index", e);
+    }
+  }
+}
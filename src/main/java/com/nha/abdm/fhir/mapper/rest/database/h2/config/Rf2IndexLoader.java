@@ -0,0 +1,135 @@
+/* (C) 2024 */
+package com.nha.abdm.fhir.mapper.rest.database.h2.config;
+
+import com.nha.abdm.fhir.mapper.rest.database.h2.index.MappedTerminologyIndex;
+import com.nha.abdm.fhir.mapper.rest.database.h2.index.Rf2Release;
+import com.nha.abdm.fhir.mapper.rest.database.h2.index.TerminologyIndexRegistry;
+import com.nha.abdm.fhir.mapper.rest.database.h2.services.TerminologyCache;
+import com.nha.abdm.fhir.mapper.rest.database.h2.tables.*;
+import jakarta.annotation.PostConstruct;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Backs the bundled code lists with a full SNOMED CT release. The RF2 snapshot found under {@code
+ * fhir.mapper.terminology.rf2.release-dir} is imported once into a memory-mapped index file per
+ * category under {@code index-dir}; later starts only map the existing files.
+ */
+@Component
+public class Rf2IndexLoader {
+  private static final Logger log = LoggerFactory.getLogger(Rf2IndexLoader.class);
+
+  /** Semantic tags of the fully specified names that belong to each category. */
+  private static final Map<Class<?>, Set<String>> SEMANTIC_TAGS =
+      Map.of(
+          SnomedConditionProcedure.class, Set.of("disorder", "finding", "procedure", "situation"),
+          SnomedDiagnostic.class, Set.of("procedure"),
+          SnomedMedicine.class,
+              Set.of("clinical drug", "medicinal product", "medicinal product form"),
+          SnomedObservation.class, Set.of("observable entity", "finding"),
+          SnomedSpecimen.class, Set.of("specimen"));
+
+  @Autowired private TerminologyIndexRegistry terminologyIndexRegistry;
+  @Autowired private TerminologyCache terminologyCache;
+
+  @Value("${fhir.mapper.terminology.rf2.release-dir:}")
+  private String releaseDir;
+
+  @Value("${fhir.mapper.terminology.rf2.index-dir:}")
+  private String indexDir;
+
+  private final AtomicBoolean importing = new AtomicBoolean();
+
+  @PostConstruct
+  public void openIndexes() {
+    if (indexDir.isBlank()) {
+      return;
+    }
+    boolean complete = true;
+    for (Class<?> type : SEMANTIC_TAGS.keySet()) {
+      Path file = indexFile(type);
+      if (!Files.exists(file)) {
+        complete = false;
+        continue;
+      }
+      try {
+        MappedTerminologyIndex index = MappedTerminologyIndex.open(file);
+        terminologyIndexRegistry.registerRelease(type, index);
+        log.info("Mapped {} release descriptions for {}", index.size(), type.getSimpleName());
+      } catch (IOException e) {
+        log.warn("Could not open release index {}, it will be rebuilt", file, e);
+        complete = false;
+      }
+    }
+    if (!complete) {
+      importInBackground();
+    }
+  }
+
+  /**
+   * Imports the configured release on a background thread, replacing the current index files.
+   *
+   * @return false when no release is configured or an import is already running
+   */
+  public boolean importInBackground() {
+    if (releaseDir.isBlank() || indexDir.isBlank() || !importing.compareAndSet(false, true)) {
+      return false;
+    }
+    Thread importer =
+        new Thread(
+            () -> {
+              try {
+                importRelease();
+              } catch (Exception e) {
+                log.error("Error importing the release in {}", releaseDir, e);
+              } finally {
+                importing.set(false);
+              }
+            },
+            "rf2-import");
+    importer.setDaemon(true);
+    importer.start();
+    return true;
+  }
+
+  public boolean isImporting() {
+    return importing.get();
+  }
+
+  private void importRelease() throws IOException {
+    long start = System.nanoTime();
+    Map<String, Set<String>> semanticTags = new HashMap<>();
+    SEMANTIC_TAGS.forEach((type, tags) -> semanticTags.put(type.getSimpleName(), tags));
+    Map<String, List<MappedTerminologyIndex.Entry>> entries =
+        Rf2Release.open(Path.of(releaseDir)).read(semanticTags);
+
+    Files.createDirectories(Path.of(indexDir));
+    for (Class<?> type : SEMANTIC_TAGS.keySet()) {
+      Path file = indexFile(type);
+      MappedTerminologyIndex.write(file, entries.get(type.getSimpleName()));
+      terminologyIndexRegistry.registerRelease(type, MappedTerminologyIndex.open(file));
+      terminologyCache.invalidate(type.getSimpleName());
+      log.info(
+          "Indexed {} release descriptions for {}",
+          entries.get(type.getSimpleName()).size(),
+          type.getSimpleName());
+    }
+    log.info(
+        "Imported release {} in {} ms",
+        releaseDir,
+        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+  }
+
+  private Path indexFile(Class<?> type) {
+    return Path.of(indexDir, type.getSimpleName() + ".idx");
+  }
+}
@@ -0,0 +1,288 @@
+/* (C) 2024 */
+package com.nha.abdm.fhir.mapper.rest.database.h2.index;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.*;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.Tokenizer;
+import org.apache.lucene.analysis.miscellaneous.ASCIIFoldingFilter;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StoredField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.document.TextField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.StoredFields;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.*;
+import org.apache.lucene.search.similarities.BM25Similarity;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.MMapDirectory;
+
+/**
+ * Lucene index of the displays of every category in one local directory, opened through {@link
+ * MMapDirectory} so that postings stay in the page cache instead of the heap. Built once from the
+ * loaded code lists and reopened as is on later starts while its commit data still matches.
+ *
+ * <p>Every input word matches a display word exactly, within one or two edits, or as a prefix for
+ * the last word, and at least half of the input words must match. Candidates are retrieved by BM25
+ * within their category and ordered by the configured {@link Ranking}.
+ */
+public class LuceneTerminologyIndex implements Closeable {
+  public static final String VERSION = "version";
+  public static final String FINGERPRINT = "fingerprint";
+  public static final String CONTENT_HASH = "contentHash";
+  private static final String CATEGORY_FIELD = "category";
+  private static final String CODE_FIELD = "code";
+  private static final String DISPLAY_FIELD = "display";
+  private static final int RERANK_CANDIDATES = 50;
+
+  /** Order of the retrieved candidates. */
+  public enum Ranking {
+    /** Lucene's BM25 score. */
+    BM25,
+    /**
+     * Cosine similarity of the word counts of the input and the display, skipping displays with
+     * more than two words beyond the input or sharing no word with it. Close to the in-memory
+     * ranking, but over BM25 candidates and Lucene-tokenized words.
+     */
+    COSINE
+  }
+
+  private final Directory directory;
+  private final DirectoryReader reader;
+  private final IndexSearcher searcher;
+  private final Analyzer analyzer = new ClinicalTextAnalyzer();
+  private final Ranking ranking;
+  private final Map<String, String> commitData;
+
+  private LuceneTerminologyIndex(Directory directory, DirectoryReader reader, Ranking ranking)
+      throws IOException {
+    this.directory = directory;
+    this.reader = reader;
+    this.searcher = new IndexSearcher(reader);
+    this.searcher.setSimilarity(new BM25Similarity());
+    this.ranking = ranking;
+    this.commitData = Map.copyOf(reader.getIndexCommit().getUserData());
+  }
+
+  /**
+   * Lower-cases, folds accents to ASCII and splits on the Unicode word boundaries, so "mg/mL" gives
+   * "mg" and "ml" and "Sjögren" matches "sjogren".
+   */
+  static class ClinicalTextAnalyzer extends Analyzer {
+    @Override
+    protected TokenStreamComponents createComponents(String fieldName) {
+      Tokenizer source = new StandardTokenizer();
+      TokenStream result = new ASCIIFoldingFilter(new LowerCaseFilter(source));
+      return new TokenStreamComponents(source, result);
+    }
+
+    @Override
+    protected TokenStream normalize(String fieldName, TokenStream in) {
+      return new ASCIIFoldingFilter(new LowerCaseFilter(in));
+    }
+  }
+
+  /** Opens the index in {@code dir}, or returns null when there is none. */
+  public static LuceneTerminologyIndex open(Path dir, Ranking ranking) throws IOException {
+    Directory directory = new MMapDirectory(dir);
+    if (!DirectoryReader.indexExists(directory)) {
+      directory.close();
+      return null;
+    }
+    DirectoryReader reader = DirectoryReader.open(directory);
+    try {
+      return new LuceneTerminologyIndex(directory, reader, ranking);
+    } catch (IOException | RuntimeException e) {
+      reader.close();
+      directory.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Replaces the index in {@code dir} with the entries of every category, keyed by category name,
+   * and records {@code commitData} ex: the terminology version with the commit, along with the
+   * {@link #contentHash} of the entries under {@link #CONTENT_HASH}.
+   */
+  public static void write(
+      Path dir,
+      Map<String, List<MappedTerminologyIndex.Entry>> categories,
+      Map<String, String> commitData)
+      throws IOException {
+    IndexWriterConfig config =
+        new IndexWriterConfig(new ClinicalTextAnalyzer())
+            .setOpenMode(IndexWriterConfig.OpenMode.CREATE)
+            .setSimilarity(new BM25Similarity());
+    try (Directory directory = new MMapDirectory(dir);
+        IndexWriter writer = new IndexWriter(directory, config)) {
+      for (Map.Entry<String, List<MappedTerminologyIndex.Entry>> category : categories.entrySet()) {
+        for (MappedTerminologyIndex.Entry entry : category.getValue()) {
+          Document document = new Document();
+          document.add(new StringField(CATEGORY_FIELD, category.getKey(), Field.Store.NO));
+          document.add(new StoredField(CODE_FIELD, entry.code()));
+          document.add(new TextField(DISPLAY_FIELD, entry.display(), Field.Store.YES));
+          writer.addDocument(document);
+        }
+      }
+      Map<String, String> data = new HashMap<>(commitData);
+      data.put(CONTENT_HASH, contentHash(categories));
+      writer.setLiveCommitData(data.entrySet());
+      writer.forceMerge(1);
+      writer.commit();
+    }
+  }
+
+  /**
+   * Hash of the codes and displays of every category, which matches the {@link #CONTENT_HASH} of
+   * an index only when it was written from the very same entries.
+   */
+  public static String contentHash(Map<String, List<MappedTerminologyIndex.Entry>> categories) {
+    MessageDigest digest = TerminologyIndex.sha256();
+    for (String category : new TreeSet<>(categories.keySet())) {
+      digest.update((category + '\n').getBytes(StandardCharsets.UTF_8));
+      for (MappedTerminologyIndex.Entry entry : categories.get(category)) {
+        digest.update(
+            (entry.code() + '\t' + entry.display() + '\n').getBytes(StandardCharsets.UTF_8));
+      }
+    }
+    return HexFormat.of().formatHex(digest.digest());
+  }
+
+  /** Data recorded with the commit the index was opened at. */
+  public Map<String, String> getCommitData() {
+    return commitData;
+  }
+
+  /** Terminology version the index was built from. */
+  public String getVersion() {
+    return commitData.get(VERSION);
+  }
+
+  /**
+   * Returns the {@code k} best displays of the category for {@code input}, best first. A search
+   * racing {@link #close()} finishes on the open segments; one starting after it finds nothing.
+   *
+   * @param category category name ex: SnomedMedicine
+   */
+  public List<MappedTerminologyIndex.Match> search(String category, String input, int k) {
+    List<String> tokens = analyze(input);
+    if (tokens.isEmpty() || k <= 0) {
+      return Collections.emptyList();
+    }
+    BooleanQuery.Builder words = new BooleanQuery.Builder();
+    for (int i = 0; i < tokens.size(); i++) {
+      words.add(wordQuery(tokens.get(i), i == tokens.size() - 1), BooleanClause.Occur.SHOULD);
+    }
+    words.setMinimumNumberShouldMatch((tokens.size() + 1) / 2);
+    Query query =
+        new BooleanQuery.Builder()
+            .add(new TermQuery(new Term(CATEGORY_FIELD, category)), BooleanClause.Occur.FILTER)
+            .add(words.build(), BooleanClause.Occur.MUST)
+            .build();
+    if (!reader.tryIncRef()) {
+      return Collections.emptyList();
+    }
+    try {
+      int limit = ranking == Ranking.COSINE ? Math.max(k, RERANK_CANDIDATES) : k;
+      ScoreDoc[] hits = searcher.search(query, limit).scoreDocs;
+      StoredFields storedFields = searcher.storedFields();
+      List<MappedTerminologyIndex.Match> matches = new ArrayList<>(hits.length);
+      for (ScoreDoc hit : hits) {
+        Document document = storedFields.document(hit.doc);
+        matches.add(
+            new MappedTerminologyIndex.Match(
+                document.get(CODE_FIELD), document.get(DISPLAY_FIELD), hit.score));
+      }
+      return ranking == Ranking.COSINE ? rerankByCosine(input, matches, k) : matches;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    } finally {
+      decRef();
+    }
+  }
+
+  private void decRef() {
+    try {
+      reader.decRef();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  private static Query wordQuery(String token, boolean last) {
+    Term term = new Term(DISPLAY_FIELD, token);
+    BooleanQuery.Builder word = new BooleanQuery.Builder();
+    word.add(new TermQuery(term), BooleanClause.Occur.SHOULD);
+    int maxEdits = token.length() >= 8 ? 2 : token.length() >= 4 ? 1 : 0;
+    if (maxEdits > 0) {
+      word.add(new BoostQuery(new FuzzyQuery(term, maxEdits), 0.5f), BooleanClause.Occur.SHOULD);
+    }
+    if (last) {
+      word.add(new BoostQuery(new PrefixQuery(term), 0.5f), BooleanClause.Occur.SHOULD);
+    }
+    return word.build();
+  }
+
+  /**
+   * Stable sort of the BM25 candidates by the cosine of their word counts with the input.
+   * Candidates sharing no word with the input, ex: fuzzy or prefix hits only, are dropped, so a
+   * lookup without a scored candidate falls through to the next source.
+   */
+  private static List<MappedTerminologyIndex.Match> rerankByCosine(
+      String input, List<MappedTerminologyIndex.Match> candidates, int k) {
+    String[] inputTokens = TerminologyIndex.tokenize(input.toLowerCase(Locale.ROOT));
+    Map<String, Integer> query = TermCounts.of(inputTokens);
+    int maxWords = inputTokens.length + 2;
+    List<MappedTerminologyIndex.Match> ranked = new ArrayList<>();
+    for (MappedTerminologyIndex.Match candidate : candidates) {
+      String[] displayTokens =
+          TerminologyIndex.tokenize(candidate.display().toLowerCase(Locale.ROOT));
+      if (displayTokens.length > maxWords) {
+        continue;
+      }
+      double score = TermCounts.cosine(query, TermCounts.of(displayTokens));
+      if (score > 0) {
+        ranked.add(new MappedTerminologyIndex.Match(candidate.code(), candidate.display(), score));
+      }
+    }
+    ranked.sort(Comparator.comparingDouble(MappedTerminologyIndex.Match::score).reversed());
+    return ranked.size() > k ? new ArrayList<>(ranked.subList(0, k)) : ranked;
+  }
+
+  private List<String> analyze(String text) {
+    List<String> tokens = new ArrayList<>();
+    if (text == null) {
+      return tokens;
+    }
+    try (TokenStream stream = analyzer.tokenStream(DISPLAY_FIELD, text)) {
+      CharTermAttribute term = stream.addAttribute(CharTermAttribute.class);
+      stream.reset();
+      while (stream.incrementToken()) {
+        tokens.add(term.toString());
+      }
+      stream.end();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return tokens;
+  }
+
+  @Override
+  public void close() throws IOException {
+    reader.close();
+    directory.close();
+  }
+}
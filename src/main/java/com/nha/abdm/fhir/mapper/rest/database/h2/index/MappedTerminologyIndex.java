@@ -0,0 +1,371 @@
+/* (C) 2024 */
+package com.nha.abdm.fhir.mapper.rest.database.h2.index;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+/**
+ * Read-only token index of one terminology category stored in a single file and memory-mapped on
+ * open, so a full release is served without being loaded on the heap and survives restarts.
+ *
+ * <p>File layout, all integers big-endian:
+ *
+ * <pre>
+ * header   magic, format version, entry count, token count,
+ *          entries offset, tokens offset, postings offset, strings offset
+ * entries  code offset, code length, display offset, display length, word count
+ * tokens   token offset, token length, first posting, posting count (sorted by token)
+ * postings entry ids, ascending per token
+ * strings  UTF-8 bytes of codes, displays and tokens
+ * </pre>
+ *
+ * Entries are ordered by word count, so the postings of a token list its shortest displays first
+ * and a bounded scan of a posting list sees the best cosine candidates early.
+ */
+public class MappedTerminologyIndex {
+  private static final int MAGIC = 0x54494458;
+  private static final int FORMAT_VERSION = 1;
+  private static final int HEADER_BYTES = 32;
+  private static final int ENTRY_BYTES = 20;
+  private static final int TOKEN_BYTES = 16;
+  private static final int POSTINGS_PER_CANDIDATE = 8;
+
+  private final MappedByteBuffer buffer;
+  private final int entryCount;
+  private final int tokenCount;
+  private final int entriesOffset;
+  private final int tokensOffset;
+  private final int postingsOffset;
+
+  /** A code and one of its descriptions. */
+  public record Entry(String code, String display) {}
+
+  /** A scored search result. */
+  public record Match(String code, String display, double score) {}
+
+  private MappedTerminologyIndex(MappedByteBuffer buffer) throws IOException {
+    if (buffer.capacity() < HEADER_BYTES
+        || buffer.getInt(0) != MAGIC
+        || buffer.getInt(4) != FORMAT_VERSION) {
+      throw new IOException("Not a terminology index of format version " + FORMAT_VERSION);
+    }
+    this.buffer = buffer;
+    this.entryCount = buffer.getInt(8);
+    this.tokenCount = buffer.getInt(12);
+    this.entriesOffset = buffer.getInt(16);
+    this.tokensOffset = buffer.getInt(20);
+    this.postingsOffset = buffer.getInt(24);
+  }
+
+  public static MappedTerminologyIndex open(Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      return new MappedTerminologyIndex(
+          channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+    }
+  }
+
+  /**
+   * Writes the index of the given entries to {@code file}. The file is written next to the target
+   * and moved into place, so readers of a previous version keep their mapping.
+   */
+  public static void write(Path file, List<Entry> entries) throws IOException {
+    List<Entry> ordered = new ArrayList<>(entries);
+    int[] wordCounts = new int[ordered.size()];
+    Map<Entry, Integer> words = new HashMap<>();
+    for (Entry entry : ordered) {
+      words.put(entry, tokens(entry.display()).length);
+    }
+    ordered.sort(
+        Comparator.comparingInt((Entry entry) -> words.get(entry))
+            .thenComparing(Entry::display)
+            .thenComparing(Entry::code));
+
+    Map<String, IntBuffer> tokenPostings = new HashMap<>();
+    for (int id = 0; id < ordered.size(); id++) {
+      String[] tokens = tokens(ordered.get(id).display());
+      wordCounts[id] = tokens.length;
+      for (String token : tokens) {
+        IntBuffer ids = tokenPostings.computeIfAbsent(token, key -> new IntBuffer());
+        if (ids.size == 0 || ids.values[ids.size - 1] != id) {
+          ids.add(id);
+        }
+      }
+    }
+    String[] vocabulary = tokenPostings.keySet().toArray(new String[0]);
+    Arrays.sort(vocabulary);
+
+    long postingCount = 0;
+    for (IntBuffer ids : tokenPostings.values()) {
+      postingCount += ids.size;
+    }
+    long entriesOffset = HEADER_BYTES;
+    long tokensOffset = entriesOffset + (long) ordered.size() * ENTRY_BYTES;
+    long postingsOffset = tokensOffset + (long) vocabulary.length * TOKEN_BYTES;
+    long stringsOffset = postingsOffset + postingCount * Integer.BYTES;
+
+    byte[][] codes = new byte[ordered.size()][];
+    byte[][] displays = new byte[ordered.size()][];
+    byte[][] tokenBytes = new byte[vocabulary.length][];
+    long stringsLength = 0;
+    for (int id = 0; id < ordered.size(); id++) {
+      codes[id] = ordered.get(id).code().getBytes(StandardCharsets.UTF_8);
+      displays[id] = ordered.get(id).display().getBytes(StandardCharsets.UTF_8);
+      stringsLength += codes[id].length + displays[id].length;
+    }
+    for (int tokenId = 0; tokenId < vocabulary.length; tokenId++) {
+      tokenBytes[tokenId] = vocabulary[tokenId].getBytes(StandardCharsets.UTF_8);
+      stringsLength += tokenBytes[tokenId].length;
+    }
+    if (stringsOffset + stringsLength > Integer.MAX_VALUE) {
+      throw new IOException("Terminology index would exceed 2 GB: " + file);
+    }
+
+    Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+    try (DataOutputStream out =
+        new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(FORMAT_VERSION);
+      out.writeInt(ordered.size());
+      out.writeInt(vocabulary.length);
+      out.writeInt((int) entriesOffset);
+      out.writeInt((int) tokensOffset);
+      out.writeInt((int) postingsOffset);
+      out.writeInt((int) stringsOffset);
+
+      int stringPosition = (int) stringsOffset;
+      for (int id = 0; id < ordered.size(); id++) {
+        out.writeInt(stringPosition);
+        out.writeInt(codes[id].length);
+        out.writeInt(stringPosition + codes[id].length);
+        out.writeInt(displays[id].length);
+        out.writeInt(wordCounts[id]);
+        stringPosition += codes[id].length + displays[id].length;
+      }
+      int postingPosition = 0;
+      for (int tokenId = 0; tokenId < vocabulary.length; tokenId++) {
+        int postings = tokenPostings.get(vocabulary[tokenId]).size;
+        out.writeInt(stringPosition);
+        out.writeInt(tokenBytes[tokenId].length);
+        out.writeInt(postingPosition);
+        out.writeInt(postings);
+        stringPosition += tokenBytes[tokenId].length;
+        postingPosition += postings;
+      }
+      for (String token : vocabulary) {
+        IntBuffer ids = tokenPostings.get(token);
+        for (int i = 0; i < ids.size; i++) {
+          out.writeInt(ids.values[i]);
+        }
+      }
+      for (int id = 0; id < ordered.size(); id++) {
+        out.write(codes[id]);
+        out.write(displays[id]);
+      }
+      for (byte[] token : tokenBytes) {
+        out.write(token);
+      }
+    }
+    Files.move(
+        temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  /**
+   * Returns the {@code k} best descriptions for {@code input} by cosine similarity of their term
+   * frequencies. Every input word but the last must be a whole word of the description and the last
+   * one a word prefix. At most {@code scanLimit} candidates are scored, out of at most {@code
+   * POSTINGS_PER_CANDIDATE} times as many postings examined, so latency does not grow with the size
+   * of the release; as postings list the shortest descriptions first, those are the ones examined.
+   */
+  public List<Match> search(String input, int scanLimit, int k) {
+    if (input == null) {
+      return Collections.emptyList();
+    }
+    String[] queryTokens = tokens(input);
+    if (queryTokens.length == 0 || entryCount == 0) {
+      return Collections.emptyList();
+    }
+    Map<String, Integer> query = TermCounts.of(queryTokens);
+    int maxWords = queryTokens.length + 2;
+
+    TopK topK = new TopK(k);
+    for (int id : candidates(queryTokens, scanLimit)) {
+      if (wordCount(id) <= maxWords) {
+        topK.offer(id, TermCounts.cosine(query, TermCounts.of(tokens(display(id)))));
+      }
+    }
+    double[] scores = new double[topK.size()];
+    int[] ids = topK.drainIds(scores);
+    List<Match> matches = new ArrayList<>(ids.length);
+    for (int i = 0; i < ids.length; i++) {
+      matches.add(new Match(code(ids[i]), display(ids[i]), scores[i]));
+    }
+    return matches;
+  }
+
+  public int size() {
+    return entryCount;
+  }
+
+  private int[] candidates(String[] queryTokens, int scanLimit) {
+    String last = queryTokens[queryTokens.length - 1];
+    if (queryTokens.length == 1) {
+      return prefixCandidates(last, scanLimit);
+    }
+
+    int narrowest = -1;
+    for (int i = 0; i < queryTokens.length - 1; i++) {
+      int tokenId = findToken(queryTokens[i]);
+      if (tokenId < 0) {
+        return new int[0];
+      }
+      if (narrowest < 0 || postingCount(tokenId) < postingCount(narrowest)) {
+        narrowest = tokenId;
+      }
+    }
+    int[] matches = new int[scanLimit];
+    int found = 0;
+    int first = postingStart(narrowest);
+    int examined = (int) Math.min(postingCount(narrowest), postingBudget(scanLimit));
+    for (int i = 0; i < examined && found < scanLimit; i++) {
+      int id = buffer.getInt(postingsOffset + (first + i) * Integer.BYTES);
+      if (containsAll(tokens(display(id)), queryTokens)) {
+        matches[found++] = id;
+      }
+    }
+    return Arrays.copyOf(matches, found);
+  }
+
+  /** Descriptions with a word starting with {@code prefix}, exact word matches first. */
+  private int[] prefixCandidates(String prefix, int scanLimit) {
+    LinkedHashSet<Integer> matches = new LinkedHashSet<>();
+    long budget = postingBudget(scanLimit);
+    int exact = findToken(prefix);
+    if (exact >= 0) {
+      budget -= addPostings(exact, matches, scanLimit, budget);
+    }
+    for (int tokenId = lowerBound(prefix);
+        tokenId < tokenCount
+            && matches.size() < scanLimit
+            && budget > 0
+            && token(tokenId).startsWith(prefix);
+        tokenId++) {
+      if (tokenId != exact) {
+        budget -= addPostings(tokenId, matches, scanLimit, budget);
+      }
+    }
+    return matches.stream().mapToInt(Integer::intValue).toArray();
+  }
+
+  /**
+   * Adds postings of the token until there are {@code scanLimit} matches or {@code budget} postings
+   * were read.
+   *
+   * @return number of postings read
+   */
+  private int addPostings(int tokenId, Set<Integer> matches, int scanLimit, long budget) {
+    int first = postingStart(tokenId);
+    int examined = (int) Math.min(postingCount(tokenId), budget);
+    int i = 0;
+    while (i < examined && matches.size() < scanLimit) {
+      matches.add(buffer.getInt(postingsOffset + (first + i++) * Integer.BYTES));
+    }
+    return i;
+  }
+
+  /** Postings a lookup examines at most for {@code scanLimit} candidates. */
+  private static long postingBudget(int scanLimit) {
+    return (long) scanLimit * POSTINGS_PER_CANDIDATE;
+  }
+
+  private static boolean containsAll(String[] displayTokens, String[] queryTokens) {
+    Set<String> words = new HashSet<>(Arrays.asList(displayTokens));
+    for (int i = 0; i < queryTokens.length - 1; i++) {
+      if (!words.contains(queryTokens[i])) {
+        return false;
+      }
+    }
+    String last = queryTokens[queryTokens.length - 1];
+    for (String word : displayTokens) {
+      if (word.startsWith(last)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static String[] tokens(String text) {
+    return TerminologyIndex.tokenize(text.toLowerCase(Locale.ROOT));
+  }
+
+  private int findToken(String token) {
+    int position = lowerBound(token);
+    return position < tokenCount && token(position).equals(token) ? position : -1;
+  }
+
+  /** First token id that is not lexically smaller than {@code token}. */
+  private int lowerBound(String token) {
+    int low = 0;
+    int high = tokenCount;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (token(middle).compareTo(token) < 0) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low;
+  }
+
+  private String token(int tokenId) {
+    int position = tokensOffset + tokenId * TOKEN_BYTES;
+    return string(buffer.getInt(position), buffer.getInt(position + 4));
+  }
+
+  private int postingStart(int tokenId) {
+    return buffer.getInt(tokensOffset + tokenId * TOKEN_BYTES + 8);
+  }
+
+  private int postingCount(int tokenId) {
+    return buffer.getInt(tokensOffset + tokenId * TOKEN_BYTES + 12);
+  }
+
+  private String code(int id) {
+    int position = entriesOffset + id * ENTRY_BYTES;
+    return string(buffer.getInt(position), buffer.getInt(position + 4));
+  }
+
+  private String display(int id) {
+    int position = entriesOffset + id * ENTRY_BYTES;
+    return string(buffer.getInt(position + 8), buffer.getInt(position + 12));
+  }
+
+  private int wordCount(int id) {
+    return buffer.getInt(entriesOffset + id * ENTRY_BYTES + 16);
+  }
+
+  private String string(int offset, int length) {
+    byte[] bytes = new byte[length];
+    buffer.get(offset, bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  private static class IntBuffer {
+    private int[] values = new int[4];
+    private int size;
+
+    private void add(int value) {
+      if (size == values.length) {
+        values = Arrays.copyOf(values, size * 2);
+      }
+      values[size++] = value;
+    }
+  }
+}
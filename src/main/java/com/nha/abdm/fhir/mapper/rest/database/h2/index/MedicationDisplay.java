@@ -0,0 +1,178 @@
+/* (C) 2024 */
+package com.nha.abdm.fhir.mapper.rest.database.h2.index;
+
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * A medicine display split into its ingredients, each with a normalized strength, and its dose
+ * form, ex: "Acetaminophen 325 mg and oxycodone hydrochloride 5 mg oral tablet" gives
+ * acetaminophen 325 mg, oxycodone hydrochloride 5 mg and "oral tablet".
+ *
+ * <p>Strengths are converted to one unit per dimension, so "1 g", "1000 mg" and "1000mg" are the
+ * same strength, and "125 mg/5 mL" is "25 mg/ml". A salt given as "(as ...)" is dropped from the
+ * ingredient name, and common dose form abbreviations, ex: "tab", are expanded. Commas, semicolons
+ * and periods outside numbers separate words, so "500 mg, oral tablet." parses as well.
+ *
+ * @param ingredients ingredients ordered by name
+ * @param doseForm lower-cased dose form, empty when the display has none
+ */
+public record MedicationDisplay(List<Ingredient> ingredients, String doseForm) {
+  private static final Pattern SALT = Pattern.compile("\\(as [^)]*\\)");
+  private static final Pattern THOUSANDS = Pattern.compile("(\\d),(\\d{3})");
+  private static final Pattern PUNCTUATION = Pattern.compile("[,;]|\\.(?!\\d)");
+  private static final Pattern DIGIT_LETTER = Pattern.compile("(\\d)([a-z\u00b5%])");
+  private static final Pattern NUMBER = Pattern.compile("\\d+(\\.\\d+)?|\\.\\d+");
+  private static final Pattern PER_AMOUNT = Pattern.compile("(.+)/(\\d+(\\.\\d+)?)");
+
+  /** Multiplier and unit each numerator unit is converted to. */
+  private static final Map<String, Map.Entry<BigDecimal, String>> UNITS =
+      Map.ofEntries(
+          Map.entry("mg", Map.entry(BigDecimal.ONE, "mg")),
+          Map.entry("g", Map.entry(BigDecimal.valueOf(1000), "mg")),
+          Map.entry("gm", Map.entry(BigDecimal.valueOf(1000), "mg")),
+          Map.entry("microgram", Map.entry(new BigDecimal("0.001"), "mg")),
+          Map.entry("mcg", Map.entry(new BigDecimal("0.001"), "mg")),
+          Map.entry("\u00b5g", Map.entry(new BigDecimal("0.001"), "mg")),
+          Map.entry("ug", Map.entry(new BigDecimal("0.001"), "mg")),
+          Map.entry("nanogram", Map.entry(new BigDecimal("0.000001"), "mg")),
+          Map.entry("unit", Map.entry(BigDecimal.ONE, "unit")),
+          Map.entry("units", Map.entry(BigDecimal.ONE, "unit")),
+          Map.entry("iu", Map.entry(BigDecimal.ONE, "unit")),
+          Map.entry("ml", Map.entry(BigDecimal.ONE, "ml")),
+          Map.entry("%", Map.entry(BigDecimal.ONE, "%")));
+
+  private static final Map<String, String> DENOMINATORS =
+      Map.of(
+          "ml", "ml",
+          "millilitre", "ml",
+          "g", "g",
+          "gm", "g",
+          "mg", "mg",
+          "actuation", "actuation");
+
+  private static final Map<String, String> FORM_WORDS =
+      Map.ofEntries(
+          Map.entry("tab", "tablet"),
+          Map.entry("tabs", "tablet"),
+          Map.entry("tablets", "tablet"),
+          Map.entry("cap", "capsule"),
+          Map.entry("caps", "capsule"),
+          Map.entry("capsules", "capsule"),
+          Map.entry("inj", "injection"),
+          Map.entry("soln", "solution"),
+          Map.entry("susp", "suspension"),
+          Map.entry("oint", "ointment"));
+
+  /**
+   * @param name lower-cased ingredient name
+   * @param strength normalized strength ex: 1000 mg or 25 mg/ml
+   */
+  public record Ingredient(String name, String strength) {}
+
+  /**
+   * Splits {@code display} into ingredients and dose form.
+   *
+   * @return null when some ingredient has no recognizable strength
+   */
+  public static MedicationDisplay parse(String display) {
+    if (display == null) {
+      return null;
+    }
+    String text = SALT.matcher(display.toLowerCase(Locale.ROOT)).replaceAll(" ");
+    text = THOUSANDS.matcher(text).replaceAll("$1$2");
+    text = PUNCTUATION.matcher(text).replaceAll(" ");
+    text = DIGIT_LETTER.matcher(text).replaceAll("$1 $2");
+    String[] tokens = TerminologyIndex.tokenize(text);
+
+    List<Ingredient> ingredients = new ArrayList<>();
+    List<String> name = new ArrayList<>();
+    int position = 0;
+    boolean formFollows = false;
+    while (position < tokens.length) {
+      String token = tokens[position];
+      if (!name.isEmpty() && NUMBER.matcher(token).matches() && position + 1 < tokens.length) {
+        int unitPosition = position + 1;
+        String strength = strength(new BigDecimal(token), tokens, unitPosition);
+        if (strength != null) {
+          ingredients.add(new Ingredient(String.join(" ", name), strength));
+          name.clear();
+          position = unitPosition + unitTokens(tokens, unitPosition);
+          if (position < tokens.length && tokens[position].equals("and")) {
+            position++;
+            continue;
+          }
+          formFollows = true;
+          break;
+        }
+      }
+      name.add(token);
+      position++;
+    }
+    if (ingredients.isEmpty() || !formFollows) {
+      return null;
+    }
+    List<String> form = new ArrayList<>();
+    for (int i = position; i < tokens.length; i++) {
+      form.add(FORM_WORDS.getOrDefault(tokens[i], tokens[i]));
+    }
+    ingredients.sort(Comparator.comparing(Ingredient::name));
+    return new MedicationDisplay(List.copyOf(ingredients), String.join(" ", form));
+  }
+
+  /** Ingredient names joined in name order, ex: acetaminophen+oxycodone hydrochloride. */
+  public String ingredientKey() {
+    StringJoiner key = new StringJoiner("+");
+    ingredients.forEach(ingredient -> key.add(ingredient.name()));
+    return key.toString();
+  }
+
+  /** Strengths joined in ingredient name order, ex: 325 mg+5 mg. */
+  public String strengthKey() {
+    StringJoiner key = new StringJoiner("+");
+    ingredients.forEach(ingredient -> key.add(ingredient.strength()));
+    return key.toString();
+  }
+
+  /**
+   * Normalized strength of {@code value} followed by the unit at {@code unitPosition}, ex: "mg",
+   * "mg/ml", or "mg/5" followed by "ml", or null when there is no known unit there.
+   */
+  private static String strength(BigDecimal value, String[] tokens, int unitPosition) {
+    String unit = tokens[unitPosition];
+    String denominator = null;
+    BigDecimal amount = BigDecimal.ONE;
+    var perAmount = PER_AMOUNT.matcher(unit);
+    if (perAmount.matches() && unitPosition + 1 < tokens.length) {
+      denominator = DENOMINATORS.get(tokens[unitPosition + 1]);
+      if (denominator == null) {
+        return null;
+      }
+      amount = new BigDecimal(perAmount.group(2));
+      unit = perAmount.group(1);
+    } else if (unit.indexOf('/') > 0) {
+      denominator = DENOMINATORS.get(unit.substring(unit.indexOf('/') + 1));
+      if (denominator == null) {
+        return null;
+      }
+      unit = unit.substring(0, unit.indexOf('/'));
+    }
+    Map.Entry<BigDecimal, String> conversion = UNITS.get(unit);
+    if (conversion == null || amount.signum() == 0) {
+      return null;
+    }
+    BigDecimal normalized =
+        value.multiply(conversion.getKey()).divide(amount, MathContext.DECIMAL64);
+    return normalized.stripTrailingZeros().toPlainString()
+        + ' '
+        + conversion.getValue()
+        + (denominator == null ? "" : '/' + denominator);
+  }
+
+  /** Number of tokens of the unit starting at {@code unitPosition}: two for "mg/5" "ml". */
+  private static int unitTokens(String[] tokens, int unitPosition) {
+    return PER_AMOUNT.matcher(tokens[unitPosition]).matches() ? 2 : 1;
+  }
+}
@@ -0,0 +1,82 @@
+/* (C) 2024 */
+package com.nha.abdm.fhir.mapper.rest.database.h2.index;
+
+import java.util.*;
+
+/**
+ * Medicine products keyed by ingredients, then strengths, then dose form, built from the displays
+ * parsed into {@link MedicationDisplay}s. A prescribed "Aspirin 75mg tab" is two hash lookups to
+ * the Aspirin 75 mg products and a pick among their dose forms, instead of the cosine scoring of
+ * every Aspirin product, where "75" and "325" are only two different words.
+ *
+ * <p>Only an input naming every ingredient with its strength resolves here. The dose form, when
+ * given, must equal the form of the product or consist of its words, ex: "tablet" for "oral
+ * tablet"; the product with the shortest form wins, then the first loaded.
+ */
+public class MedicationIndex {
+  private final Map<String, Map<String, int[]>> products;
+  private final String[] doseForms;
+
+  private MedicationIndex(Map<String, Map<String, int[]>> products, String[] doseForms) {
+    this.products = products;
+    this.doseForms = doseForms;
+  }
+
+  /** Indexes the displays that parse, where {@code displays[i]} is the display of concept i. */
+  public static MedicationIndex build(String[] displays) {
+    Map<String, Map<String, List<Integer>>> products = new HashMap<>();
+    String[] doseForms = new String[displays.length];
+    for (int id = 0; id < displays.length; id++) {
+      MedicationDisplay medication = MedicationDisplay.parse(displays[id]);
+      if (medication == null) {
+        continue;
+      }
+      doseForms[id] = medication.doseForm();
+      products
+          .computeIfAbsent(medication.ingredientKey(), key -> new HashMap<>())
+          .computeIfAbsent(medication.strengthKey(), key -> new ArrayList<>())
+          .add(id);
+    }
+    Map<String, Map<String, int[]>> index = new HashMap<>(products.size() * 2);
+    products.forEach(
+        (ingredients, strengths) -> {
+          Map<String, int[]> byStrength = new HashMap<>(strengths.size() * 2);
+          strengths.forEach(
+              (strength, ids) ->
+                  byStrength.put(strength, ids.stream().mapToInt(Integer::intValue).toArray()));
+          index.put(ingredients, byStrength);
+        });
+    return new MedicationIndex(index, doseForms);
+  }
+
+  /**
+   * Id of the product matching the ingredients, strengths and dose form of {@code input}.
+   *
+   * @return the concept id, or -1 when the input does not name a product of the index
+   */
+  public int match(String input) {
+    MedicationDisplay medication = MedicationDisplay.parse(input);
+    if (medication == null) {
+      return -1;
+    }
+    Map<String, int[]> strengths = products.get(medication.ingredientKey());
+    int[] ids = strengths == null ? null : strengths.get(medication.strengthKey());
+    return ids == null ? -1 : withDoseForm(ids, medication.doseForm());
+  }
+
+  private int withDoseForm(int[] ids, String doseForm) {
+    Set<String> words = new HashSet<>(Arrays.asList(TerminologyIndex.tokenize(doseForm)));
+    int best = -1;
+    for (int id : ids) {
+      if (doseForms[id].equals(doseForm)) {
+        return id;
+      }
+      boolean containsForm =
+          new HashSet<>(Arrays.asList(TerminologyIndex.tokenize(doseForms[id]))).containsAll(words);
+      if (containsForm && (best < 0 || doseForms[id].length() < doseForms[best].length())) {
+        best = id;
+      }
+    }
+    return best;
+  }
+}
@@ -0,0 +1,236 @@
+/* (C) 2024 */
+package com.nha.abdm.fhir.mapper.rest.database.h2.index;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Locality-sensitive hashing of the word sets of the displays of one category. Every display gets
+ * a MinHash signature of {@code bands * rows} values at build time, and each band of {@code rows}
+ * values is a bucket key, so displays sharing any whole band with the input are its candidates.
+ *
+ * <p>A display whose word set has a Jaccard similarity {@code s} with the input shares at least
+ * one band with probability {@code 1 - (1 - s^rows)^bands}: more bands raise the recall, more rows
+ * shrink the candidate sets. The candidates colliding in the most bands are kept when there are
+ * more than {@code maxCandidates}, so the cosine scoring after it stays bounded however common the
+ * input words are.
+ *
+ * <p>The index counts its lookups, their candidates and time. A sample of the lookups is also
+ * scored against every substring match of the input, which measures the recall actually achieved.
+ * That scoring runs on a single background thread shared by all indexes, never on the lookup's, and
+ * samples arriving while {@link #SAMPLE_QUEUE} others wait are dropped.
+ */
+public class MinHashIndex {
+  static final int SAMPLE_QUEUE = 64;
+  private static final ExecutorService SAMPLER =
+      new ThreadPoolExecutor(
+          1,
+          1,
+          0,
+          TimeUnit.MILLISECONDS,
+          new ArrayBlockingQueue<>(SAMPLE_QUEUE),
+          runnable -> {
+            Thread thread = new Thread(runnable, "minhash-recall-sampler");
+            thread.setDaemon(true);
+            return thread;
+          },
+          new ThreadPoolExecutor.DiscardPolicy());
+
+  private final Parameters parameters;
+  private final long[] seeds;
+  private final Map<Long, int[]>[] buckets;
+  private final LongAdder lookups = new LongAdder();
+  private final LongAdder candidates = new LongAdder();
+  private final LongAdder nanos = new LongAdder();
+  private final LongAdder sampled = new LongAdder();
+  private final LongAdder recalled = new LongAdder();
+
+  /**
+   * Shape of the index.
+   *
+   * @param bands number of bands, more raise the recall
+   * @param rows values per band, more make the candidate sets smaller
+   * @param maxCandidates candidates scored per lookup at most
+   * @param sampleRate share of the lookups also checked against every substring match, 0 for none
+   */
+  public record Parameters(int bands, int rows, int maxCandidates, double sampleRate) {}
+
+  private MinHashIndex(Parameters parameters, long[] seeds, Map<Long, int[]>[] buckets) {
+    this.parameters = parameters;
+    this.seeds = seeds;
+    this.buckets = buckets;
+  }
+
+  /** Hashes the word sets, where {@code conceptTokens[i]} are the words of concept i. */
+  @SuppressWarnings("unchecked")
+  public static MinHashIndex build(String[][] conceptTokens, Parameters parameters) {
+    long[] seeds = new long[parameters.bands() * parameters.rows()];
+    Random random = new Random(parameters.bands() * 31L + parameters.rows());
+    for (int i = 0; i < seeds.length; i++) {
+      seeds[i] = random.nextLong();
+    }
+    List<Map<Long, List<Integer>>> bandIds = new ArrayList<>();
+    for (int band = 0; band < parameters.bands(); band++) {
+      bandIds.add(new HashMap<>());
+    }
+    for (int id = 0; id < conceptTokens.length; id++) {
+      long[] signature = signature(conceptTokens[id], seeds);
+      if (signature == null) {
+        continue;
+      }
+      for (int band = 0; band < parameters.bands(); band++) {
+        bandIds
+            .get(band)
+            .computeIfAbsent(bandKey(signature, band, parameters.rows()), key -> new ArrayList<>())
+            .add(id);
+      }
+    }
+    Map<Long, int[]>[] buckets = new Map[parameters.bands()];
+    for (int band = 0; band < parameters.bands(); band++) {
+      Map<Long, int[]> bucket = new HashMap<>(bandIds.get(band).size() * 2);
+      bandIds
+          .get(band)
+          .forEach(
+              (key, ids) -> bucket.put(key, ids.stream().mapToInt(Integer::intValue).toArray()));
+      buckets[band] = bucket;
+    }
+    return new MinHashIndex(parameters, seeds, buckets);
+  }
+
+  /**
+   * Ids of the concepts sharing a band with {@code tokens}, ascending; the ones colliding in the
+   * most bands when there are more than {@code maxCandidates}.
+   */
+  public int[] candidates(String[] tokens) {
+    long[] signature = signature(tokens, seeds);
+    if (signature == null) {
+      return new int[0];
+    }
+    Map<Integer, Integer> collisions = new HashMap<>();
+    for (int band = 0; band < buckets.length; band++) {
+      int[] ids = buckets[band].get(bandKey(signature, band, parameters.rows()));
+      if (ids != null) {
+        for (int id : ids) {
+          collisions.merge(id, 1, Integer::sum);
+        }
+      }
+    }
+    int[] ids;
+    if (collisions.size() <= parameters.maxCandidates()) {
+      ids = collisions.keySet().stream().mapToInt(Integer::intValue).toArray();
+    } else {
+      ids =
+          collisions.entrySet().stream()
+              .sorted(
+                  Map.Entry.<Integer, Integer>comparingByValue()
+                      .reversed()
+                      .thenComparing(Map.Entry.comparingByKey()))
+              .limit(parameters.maxCandidates())
+              .mapToInt(Map.Entry::getKey)
+              .toArray();
+    }
+    Arrays.sort(ids);
+    return ids;
+  }
+
+  /** MinHash of the distinct words under every seed, or null for no words. */
+  private static long[] signature(String[] tokens, long[] seeds) {
+    if (tokens.length == 0) {
+      return null;
+    }
+    long[] signature = new long[seeds.length];
+    Arrays.fill(signature, Long.MAX_VALUE);
+    for (String token : tokens) {
+      long hash = mix(token.hashCode());
+      for (int i = 0; i < seeds.length; i++) {
+        signature[i] = Math.min(signature[i], mix(hash ^ seeds[i]));
+      }
+    }
+    return signature;
+  }
+
+  private static long bandKey(long[] signature, int band, int rows) {
+    long key = band;
+    for (int row = band * rows; row < (band + 1) * rows; row++) {
+      key = key * 1_000_003L + signature[row];
+    }
+    return key;
+  }
+
+  /** SplitMix64 finalizer. */
+  private static long mix(long value) {
+    value = (value ^ (value >>> 30)) * 0xbf58476d1ce4e5b9L;
+    value = (value ^ (value >>> 27)) * 0x94d049bb133111ebL;
+    return value ^ (value >>> 31);
+  }
+
+  /** Counts one lookup that scored {@code candidateCount} candidates in {@code elapsedNanos}. */
+  public void recordLookup(int candidateCount, long elapsedNanos) {
+    lookups.increment();
+    candidates.add(candidateCount);
+    nanos.add(elapsedNanos);
+  }
+
+  /**
+   * Checks the current lookup in the background when it is sampled.
+   *
+   * @param wasRecalled scores every substring match and tells whether the candidates held the best
+   */
+  public void sample(BooleanSupplier wasRecalled) {
+    if (parameters.sampleRate() > 0
+        && ThreadLocalRandom.current().nextDouble() < parameters.sampleRate()) {
+      SAMPLER.execute(() -> recordSample(wasRecalled.getAsBoolean()));
+    }
+  }
+
+  /** Counts a sampled lookup, recalled when the candidates held the best substring match. */
+  private void recordSample(boolean wasRecalled) {
+    sampled.increment();
+    if (wasRecalled) {
+      recalled.increment();
+    }
+  }
+
+  /** Probability that a display with Jaccard similarity {@code similarity} is a candidate. */
+  public double recallAt(double similarity) {
+    return 1 - Math.pow(1 - Math.pow(similarity, parameters.rows()), parameters.bands());
+  }
+
+  public Parameters getParameters() {
+    return parameters;
+  }
+
+  public int bucketCount() {
+    int count = 0;
+    for (Map<Long, int[]> bucket : buckets) {
+      count += bucket.size();
+    }
+    return count;
+  }
+
+  public long getLookups() {
+    return lookups.sum();
+  }
+
+  public long getCandidates() {
+    return candidates.sum();
+  }
+
+  public long getNanos() {
+    return nanos.sum();
+  }
+
+  public long getSampled() {
+    return sampled.sum();
+  }
+
+  public long getRecalled() {
+    return recalled.sum();
+  }
+}
@@ -0,0 +1,111 @@
+/* (C) 2024 */
+package com.nha.abdm.fhir.mapper.rest.database.h2.index;
+
+import java.util.*;
+import org.apache.commons.codec.language.DoubleMetaphone;
+
+/**
+ * Double Metaphone keys of the vocabulary of one category, used to respell transliterated words,
+ * ex: "amoxycillin" or "cetirizin", as the vocabulary word that sounds the same. Both the primary
+ * and the alternate key of every word are indexed, so a lookup is one or two hash lookups.
+ *
+ * <p>Among the words sharing a key, the one with the fewest edits wins, then the most frequent
+ * one. Words further than a third of their length from the input are not considered the same.
+ */
+public class PhoneticIndex {
+  static final int MAX_CODE_LENGTH = 8;
+  private static final DoubleMetaphone ENCODER = new DoubleMetaphone();
+
+  static {
+    ENCODER.setMaxCodeLen(MAX_CODE_LENGTH);
+  }
+
+  private final String[] vocabulary;
+  private final Set<String> words;
+  private final int[] frequencies;
+  private final Map<String, int[]> wordsByKey;
+
+  private PhoneticIndex(
+      String[] vocabulary, Set<String> words, int[] frequencies, Map<String, int[]> wordsByKey) {
+    this.vocabulary = vocabulary;
+    this.words = words;
+    this.frequencies = frequencies;
+    this.wordsByKey = wordsByKey;
+  }
+
+  /**
+   * Indexes the correctable words of {@code vocabulary}, where {@code frequencies[i]} is the number
+   * of concepts containing {@code vocabulary[i]} and {@code words} answers membership in it.
+   */
+  public static PhoneticIndex build(String[] vocabulary, Set<String> words, int[] frequencies) {
+    Map<String, List<Integer>> keyWords = new HashMap<>();
+    for (int wordId = 0; wordId < vocabulary.length; wordId++) {
+      if (!SpellingCorrector.correctable(vocabulary[wordId])) {
+        continue;
+      }
+      String primary = ENCODER.doubleMetaphone(vocabulary[wordId]);
+      String alternate = ENCODER.doubleMetaphone(vocabulary[wordId], true);
+      keyWords.computeIfAbsent(primary, key -> new ArrayList<>()).add(wordId);
+      if (!alternate.equals(primary)) {
+        keyWords.computeIfAbsent(alternate, key -> new ArrayList<>()).add(wordId);
+      }
+    }
+    Map<String, int[]> wordsByKey = new HashMap<>(keyWords.size() * 2);
+    keyWords.forEach(
+        (key, wordIds) ->
+            wordsByKey.put(key, wordIds.stream().mapToInt(Integer::intValue).toArray()));
+    return new PhoneticIndex(vocabulary, words, frequencies, wordsByKey);
+  }
+
+  /**
+   * Replaces every lower-case token that is not a vocabulary word by the vocabulary word that
+   * sounds the same, when there is one.
+   *
+   * @return the respelled tokens, or {@code tokens} itself when none was replaced
+   */
+  public String[] respell(String[] tokens) {
+    String[] respelled = tokens;
+    for (int i = 0; i < tokens.length; i++) {
+      if (words.contains(tokens[i]) || !SpellingCorrector.correctable(tokens[i])) {
+        continue;
+      }
+      String word = soundAlike(tokens[i]);
+      if (word != null) {
+        if (respelled == tokens) {
+          respelled = tokens.clone();
+        }
+        respelled[i] = word;
+      }
+    }
+    return respelled;
+  }
+
+  private String soundAlike(String token) {
+    int maxDistance = token.length() / 3;
+    int bestWordId = -1;
+    int bestDistance = maxDistance + 1;
+    String primary = ENCODER.doubleMetaphone(token);
+    String alternate = ENCODER.doubleMetaphone(token, true);
+    for (String key : alternate.equals(primary) ? List.of(primary) : List.of(primary, alternate)) {
+      int[] wordIds = wordsByKey.get(key);
+      if (wordIds == null) {
+        continue;
+      }
+      for (int wordId : wordIds) {
+        int distance = SpellingCorrector.distance(token, vocabulary[wordId], maxDistance);
+        if (distance < bestDistance
+            || (distance == bestDistance
+                && distance <= maxDistance
+                && frequencies[wordId] > frequencies[bestWordId])) {
+          bestWordId = wordId;
+          bestDistance = distance;
+        }
+      }
+    }
+    return bestWordId < 0 ? null : vocabulary[bestWordId];
+  }
+
+  public int keyCount() {
+    return wordsByKey.size();
+  }
+}
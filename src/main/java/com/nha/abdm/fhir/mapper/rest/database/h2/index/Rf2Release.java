@@ -0,0 +1,163 @@
+/* (C) 2024 */
+package com.nha.abdm.fhir.mapper.rest.database.h2.index;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Streams the concept, description and language refset snapshot files of a SNOMED CT RF2 release
+ * and groups the accepted synonyms of active concepts by category. A concept belongs to every
+ * category whose semantic tags include the tag of its fully specified name, ex: "(disorder)".
+ */
+public class Rf2Release {
+  private static final String CONCEPT_FILE = "sct2_Concept_Snapshot";
+  private static final String DESCRIPTION_FILE = "sct2_Description_Snapshot";
+  private static final String LANGUAGE_REFSET_FILE = "der2_cRefset_LanguageSnapshot";
+  private static final String FULLY_SPECIFIED_NAME = "900000000000003001";
+  private static final String SYNONYM = "900000000000013009";
+  private static final String PREFERRED = "900000000000548007";
+  private static final String ACCEPTABLE = "900000000000549004";
+
+  private final List<Path> conceptFiles;
+  private final List<Path> descriptionFiles;
+  private final List<Path> languageRefsetFiles;
+
+  private Rf2Release(
+      List<Path> conceptFiles, List<Path> descriptionFiles, List<Path> languageRefsetFiles) {
+    this.conceptFiles = conceptFiles;
+    this.descriptionFiles = descriptionFiles;
+    this.languageRefsetFiles = languageRefsetFiles;
+  }
+
+  /** Locates the snapshot files anywhere below {@code releaseDir}. */
+  public static Rf2Release open(Path releaseDir) throws IOException {
+    List<Path> files;
+    try (Stream<Path> walk = Files.walk(releaseDir)) {
+      files = walk.filter(Files::isRegularFile).sorted().toList();
+    }
+    Rf2Release release =
+        new Rf2Release(
+            withPrefix(files, CONCEPT_FILE),
+            withPrefix(files, DESCRIPTION_FILE),
+            withPrefix(files, LANGUAGE_REFSET_FILE));
+    if (release.conceptFiles.isEmpty() || release.descriptionFiles.isEmpty()) {
+      throw new IOException("No RF2 concept or description snapshot found in " + releaseDir);
+    }
+    return release;
+  }
+
+  /**
+   * Reads the release in three streaming passes and returns the entries of every category, keyed
+   * by the category names of {@code semanticTags}. Without a language refset every active synonym
+   * is accepted.
+   */
+  public Map<String, List<MappedTerminologyIndex.Entry>> read(
+      Map<String, Set<String>> semanticTags) throws IOException {
+    Set<String> activeConcepts = new HashSet<>();
+    for (Path file : conceptFiles) {
+      readRows(
+          file,
+          5,
+          row -> {
+            if ("1".equals(row[2])) {
+              activeConcepts.add(row[0]);
+            }
+          });
+    }
+
+    Set<String> acceptedDescriptions = new HashSet<>();
+    for (Path file : languageRefsetFiles) {
+      readRows(
+          file,
+          7,
+          row -> {
+            if ("1".equals(row[2]) && (PREFERRED.equals(row[6]) || ACCEPTABLE.equals(row[6]))) {
+              acceptedDescriptions.add(row[5]);
+            }
+          });
+    }
+    boolean acceptAll = languageRefsetFiles.isEmpty();
+
+    Map<String, List<String>> conceptCategories = new HashMap<>();
+    for (Path file : descriptionFiles) {
+      readRows(
+          file,
+          9,
+          row -> {
+            if ("1".equals(row[2])
+                && FULLY_SPECIFIED_NAME.equals(row[6])
+                && activeConcepts.contains(row[4])) {
+              List<String> categories = categoriesOf(semanticTag(row[7]), semanticTags);
+              if (!categories.isEmpty()) {
+                conceptCategories.put(row[4], categories);
+              }
+            }
+          });
+    }
+
+    Map<String, List<MappedTerminologyIndex.Entry>> entries = new HashMap<>();
+    semanticTags.keySet().forEach(category -> entries.put(category, new ArrayList<>()));
+    for (Path file : descriptionFiles) {
+      readRows(
+          file,
+          9,
+          row -> {
+            List<String> categories = conceptCategories.get(row[4]);
+            if (categories != null
+                && "1".equals(row[2])
+                && SYNONYM.equals(row[6])
+                && (acceptAll || acceptedDescriptions.contains(row[0]))) {
+              MappedTerminologyIndex.Entry entry = new MappedTerminologyIndex.Entry(row[4], row[7]);
+              categories.forEach(category -> entries.get(category).add(entry));
+            }
+          });
+    }
+    return entries;
+  }
+
+  /** Text of the trailing parentheses of a fully specified name, ex: "disorder". */
+  static String semanticTag(String fullySpecifiedName) {
+    int open = fullySpecifiedName.lastIndexOf('(');
+    int close = fullySpecifiedName.lastIndexOf(')');
+    return open >= 0 && close > open
+        ? fullySpecifiedName.substring(open + 1, close).toLowerCase(Locale.ROOT)
+        : "";
+  }
+
+  private static List<String> categoriesOf(String tag, Map<String, Set<String>> semanticTags) {
+    List<String> categories = new ArrayList<>();
+    semanticTags.forEach(
+        (category, tags) -> {
+          if (tags.contains(tag)) {
+            categories.add(category);
+          }
+        });
+    return categories;
+  }
+
+  private static List<Path> withPrefix(List<Path> files, String prefix) {
+    return files.stream()
+        .filter(file -> file.getFileName().toString().startsWith(prefix))
+        .toList();
+  }
+
+  /** Tab separated rows after the header line; rows with fewer columns are skipped. */
+  private static void readRows(Path file, int columns, Consumer<String[]> consumer)
+      throws IOException {
+    try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      String line = reader.readLine();
+      while ((line = reader.readLine()) != null) {
+        String[] row = line.split("\t", -1);
+        if (row.length >= columns) {
+          consumer.accept(row);
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,5 @@
+/* (C) 2024 */
+package com.nha.abdm.fhir.mapper.rest.database.h2.index;
+
+/** A concept together with its cosine similarity to the looked up text. */
+public record ScoredConcept<T>(T concept, double score) {}
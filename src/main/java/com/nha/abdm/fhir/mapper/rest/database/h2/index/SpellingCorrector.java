@@ -0,0 +1,225 @@
+/* (C) 2024 */
+package com.nha.abdm.fhir.mapper.rest.database.h2.index;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Symmetric delete spelling correction over the vocabulary of one category. Every word, cut to its
+ * first {@code prefixLength} characters, is stored under each string obtained by deleting up to
+ * {@code maxEditDistance} characters from it. A misspelled token generates the same deletes of its
+ * own prefix, so its candidates are a handful of hash lookups whatever the vocabulary size, and
+ * only those candidates are checked with an edit distance.
+ *
+ * <p>The prefix bounds the deletes kept per word, and with it the memory of the dictionary. Words
+ * with digits, ex: "500mg", and words shorter than {@link #MIN_WORD_LENGTH} are never corrected.
+ */
+public class SpellingCorrector {
+  static final int MIN_WORD_LENGTH = 4;
+  static final int CHARS_PER_EDIT = 4;
+
+  private final String[] vocabulary;
+  private final Set<String> words;
+  private final int[] frequencies;
+  private final Map<String, int[]> deletes;
+  private final int maxEditDistance;
+  private final int prefixLength;
+  private final AtomicLong lookups = new AtomicLong();
+  private final AtomicLong corrections = new AtomicLong();
+
+  private SpellingCorrector(
+      String[] vocabulary,
+      Set<String> words,
+      int[] frequencies,
+      Map<String, int[]> deletes,
+      int maxEditDistance,
+      int prefixLength) {
+    this.vocabulary = vocabulary;
+    this.words = words;
+    this.frequencies = frequencies;
+    this.deletes = deletes;
+    this.maxEditDistance = maxEditDistance;
+    this.prefixLength = prefixLength;
+  }
+
+  /**
+   * Builds the delete dictionary of {@code vocabulary}, where {@code frequencies[i]} is the number
+   * of concepts containing {@code vocabulary[i]} and {@code words} answers membership in it. A
+   * {@code maxEditDistance} of 0 disables correction.
+   */
+  public static SpellingCorrector build(
+      String[] vocabulary,
+      Set<String> words,
+      int[] frequencies,
+      int maxEditDistance,
+      int prefixLength) {
+    Map<String, List<Integer>> wordsByDelete = new HashMap<>();
+    if (maxEditDistance > 0) {
+      for (int wordId = 0; wordId < vocabulary.length; wordId++) {
+        if (correctable(vocabulary[wordId])) {
+          for (String delete : deletes(vocabulary[wordId], maxEditDistance, prefixLength)) {
+            List<Integer> wordIds = wordsByDelete.computeIfAbsent(delete, key -> new ArrayList<>());
+            if (wordIds.isEmpty() || wordIds.get(wordIds.size() - 1) != wordId) {
+              wordIds.add(wordId);
+            }
+          }
+        }
+      }
+    }
+    Map<String, int[]> deletes = new HashMap<>(wordsByDelete.size() * 2);
+    wordsByDelete.forEach(
+        (delete, wordIds) ->
+            deletes.put(delete, wordIds.stream().mapToInt(Integer::intValue).toArray()));
+    return new SpellingCorrector(
+        vocabulary, words, frequencies, deletes, maxEditDistance, prefixLength);
+  }
+
+  /**
+   * Replaces every lower-case token that is not a vocabulary word by the closest word within the
+   * maximum edit distance, preferring the smaller distance and then the more frequent word.
+   *
+   * @return the corrected tokens, or {@code tokens} itself when none needed correcting
+   */
+  public String[] correct(String[] tokens) {
+    lookups.incrementAndGet();
+    String[] corrected = tokens;
+    for (int i = 0; i < tokens.length; i++) {
+      if (deletes.isEmpty() || words.contains(tokens[i]) || !correctable(tokens[i])) {
+        continue;
+      }
+      String word = closestWord(tokens[i]);
+      if (word != null) {
+        if (corrected == tokens) {
+          corrected = tokens.clone();
+        }
+        corrected[i] = word;
+      }
+    }
+    if (corrected != tokens) {
+      corrections.incrementAndGet();
+    }
+    return corrected;
+  }
+
+  /**
+   * Closest word to {@code token}, allowing one edit per {@link #CHARS_PER_EDIT} characters of it
+   * and at most the maximum edit distance, so that short words are not turned into other words.
+   */
+  private String closestWord(String token) {
+    int allowedDistance = Math.min(maxEditDistance, Math.max(1, token.length() / CHARS_PER_EDIT));
+    int bestWordId = -1;
+    int bestDistance = allowedDistance + 1;
+    for (String delete : deletes(token, allowedDistance, prefixLength)) {
+      int[] wordIds = deletes.get(delete);
+      if (wordIds == null) {
+        continue;
+      }
+      for (int wordId : wordIds) {
+        String word = vocabulary[wordId];
+        if (Math.abs(word.length() - token.length()) > Math.min(bestDistance, allowedDistance)) {
+          continue;
+        }
+        int distance = distance(token, word, allowedDistance);
+        if (distance > allowedDistance) {
+          continue;
+        }
+        if (distance < bestDistance
+            || (distance == bestDistance && frequencies[wordId] > frequencies[bestWordId])) {
+          bestWordId = wordId;
+          bestDistance = distance;
+        }
+      }
+    }
+    return bestWordId < 0 ? null : vocabulary[bestWordId];
+  }
+
+  /** Strings obtained by deleting up to {@code maxDeletes} characters from the word prefix. */
+  static Set<String> deletes(String word, int maxDeletes, int prefixLength) {
+    String prefix = word.length() > prefixLength ? word.substring(0, prefixLength) : word;
+    Set<String> deletes = new HashSet<>();
+    deletes.add(prefix);
+    List<String> level = List.of(prefix);
+    for (int depth = 0; depth < maxDeletes; depth++) {
+      List<String> next = new ArrayList<>();
+      for (String text : level) {
+        for (int i = 0; i < text.length() && text.length() > 1; i++) {
+          String delete = text.substring(0, i) + text.substring(i + 1);
+          if (deletes.add(delete)) {
+            next.add(delete);
+          }
+        }
+      }
+      level = next;
+    }
+    return deletes;
+  }
+
+  /**
+   * Optimal string alignment distance (Levenshtein with adjacent transpositions) between the two
+   * strings, or {@code maxDistance + 1} as soon as it is known to exceed {@code maxDistance}.
+   */
+  static int distance(String source, String target, int maxDistance) {
+    int[] rowBeforePrevious = new int[target.length() + 1];
+    int[] previousRow = new int[target.length() + 1];
+    int[] row = new int[target.length() + 1];
+    for (int j = 0; j <= target.length(); j++) {
+      row[j] = j;
+    }
+    for (int i = 1; i <= source.length(); i++) {
+      int[] recycled = rowBeforePrevious;
+      rowBeforePrevious = previousRow;
+      previousRow = row;
+      row = recycled;
+      row[0] = i;
+      int rowMinimum = i;
+      for (int j = 1; j <= target.length(); j++) {
+        int cost = source.charAt(i - 1) == target.charAt(j - 1) ? 0 : 1;
+        int value =
+            Math.min(Math.min(row[j - 1] + 1, previousRow[j] + 1), previousRow[j - 1] + cost);
+        if (i > 1
+            && j > 1
+            && source.charAt(i - 1) == target.charAt(j - 2)
+            && source.charAt(i - 2) == target.charAt(j - 1)) {
+          value = Math.min(value, rowBeforePrevious[j - 2] + 1);
+        }
+        row[j] = value;
+        rowMinimum = Math.min(rowMinimum, value);
+      }
+      if (rowMinimum > maxDistance) {
+        return maxDistance + 1;
+      }
+    }
+    return Math.min(row[target.length()], maxDistance + 1);
+  }
+
+  /** Whether {@code word} is long enough and free of digits to be corrected. */
+  static boolean correctable(String word) {
+    if (word.length() < MIN_WORD_LENGTH) {
+      return false;
+    }
+    for (int i = 0; i < word.length(); i++) {
+      if (Character.isDigit(word.charAt(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  public int getMaxEditDistance() {
+    return maxEditDistance;
+  }
+
+  public int deleteCount() {
+    return deletes.size();
+  }
+
+  /** Number of {@link #correct(String[])} calls so far. */
+  public long getLookups() {
+    return lookups.get();
+  }
+
+  /** Number of {@link #correct(String[])} calls that corrected at least one token. */
+  public long getCorrections() {
+    return corrections.get();
+  }
+}
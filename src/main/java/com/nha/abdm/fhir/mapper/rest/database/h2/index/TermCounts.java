@@ -0,0 +1,35 @@
+/* (C) 2024 */
+package com.nha.abdm.fhir.mapper.rest.database.h2.index;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/** Word counts of tokenized text and their cosine similarity, for indexes scoring stored text. */
+final class TermCounts {
+  private TermCounts() {}
+
+  static Map<String, Integer> of(String[] tokens) {
+    Map<String, Integer> counts = new HashMap<>();
+    for (String token : tokens) {
+      counts.merge(token, 1, Integer::sum);
+    }
+    return counts;
+  }
+
+  static double cosine(Map<String, Integer> query, Map<String, Integer> candidate) {
+    long dot = 0;
+    for (Map.Entry<String, Integer> term : query.entrySet()) {
+      dot += (long) term.getValue() * candidate.getOrDefault(term.getKey(), 0);
+    }
+    double norms = norm(query) * norm(candidate);
+    return norms <= 0 ? 0.0 : dot / norms;
+  }
+
+  private static double norm(Map<String, Integer> counts) {
+    long sumOfSquares = 0;
+    for (int count : counts.values()) {
+      sumOfSquares += (long) count * count;
+    }
+    return Math.sqrt(sumOfSquares);
+  }
+}
@@ -0,0 +1,810 @@
+/* (C) 2024 */
+package com.nha.abdm.fhir.mapper.rest.database.h2.index;
+
+import com.nha.abdm.fhir.mapper.rest.database.h2.services.Displayable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * Immutable in-memory inverted index over the displays of one terminology category. Tokens are the
+ * lower-cased, whitespace separated words of every display; each token maps to the ascending list
+ * of concept ids (positions in load order) that contain it.
+ *
+ * <p>{@link #findByDisplay(String, int)} keeps the semantics of the old {@code ILIKE
+ * CONCAT('%', :display, '%') LIMIT n} repository queries while only touching the postings of the
+ * tokens that can possibly match.
+ *
+ * <p>Every concept also carries its term vector (sorted token ids, term frequencies and norm),
+ * computed once at build time, so cosine scoring of a candidate is a merge of two small int arrays.
+ *
+ * <p>The vocabulary also backs a {@link SpellingCorrector} and, when enabled in the {@link
+ * Settings}, a {@link PhoneticIndex}, so that a misspelled or transliterated word can be replaced
+ * by the vocabulary word it most likely stands for before retrieval.
+ *
+ * <p>Medicine categories can also carry a {@link MedicationIndex} of the displays parsed into
+ * ingredients, strengths and dose forms, and large categories a {@link MinHashIndex} that prunes
+ * the substring candidates of {@link #bestMatch(String, int)}, when there are more than the limit,
+ * to those sharing a band with the input instead of the first ones loaded.
+ */
+public class TerminologyIndex<T extends Displayable> {
+  private static final int SEARCH_CANDIDATE_LIMIT = 1000;
+
+  private final List<T> concepts;
+  private final List<T> distinctConcepts;
+  private final Map<String, T> byCode;
+  private final Map<String, T> byDisplay;
+  private final String[] displays;
+  private final String[] vocabulary;
+  private final Map<String, Integer> tokenIds;
+  private final int[][] postings;
+  private final int[][] termIds;
+  private final int[][] termCounts;
+  private final double[] norms;
+  private final int[] wordCounts;
+  private final TrigramIndex trigramIndex;
+  private final SpellingCorrector spellingCorrector;
+  private final PhoneticIndex phoneticIndex;
+  private final MedicationIndex medicationIndex;
+  private final MinHashIndex minHashIndex;
+  private final String fingerprint;
+
+  /**
+   * Optional lookup structures of an index.
+   *
+   * @param maxEditDistance edits a misspelled word may be away from its correction, 0 for none
+   * @param prefixLength characters of every word the spelling corrector indexes deletes of
+   * @param trigram whether to build the {@link TrigramIndex} of {@link #repairWords}
+   * @param phonetic whether to build a {@link PhoneticIndex}
+   * @param medication whether to build a {@link MedicationIndex}
+   * @param minHash shape of the {@link MinHashIndex} to build, null for none
+   */
+  public record Settings(
+      int maxEditDistance,
+      int prefixLength,
+      boolean trigram,
+      boolean phonetic,
+      boolean medication,
+      MinHashIndex.Parameters minHash) {
+    public static final Settings NONE = new Settings(0, 0, true, false, false, null);
+  }
+
+  private TerminologyIndex(
+      List<T> concepts,
+      String[] displays,
+      String[] vocabulary,
+      Map<String, Integer> tokenIds,
+      int[][] postings,
+      String[][] conceptTokens,
+      Settings settings) {
+    this.concepts = concepts;
+    this.byCode = new LinkedHashMap<>();
+    for (T concept : concepts) {
+      byCode.put(concept.getCode(), concept);
+    }
+    this.distinctConcepts = List.copyOf(byCode.values());
+    this.byDisplay = new HashMap<>(concepts.size() * 2);
+    for (int id = 0; id < concepts.size(); id++) {
+      byDisplay.putIfAbsent(String.join(" ", conceptTokens[id]), concepts.get(id));
+    }
+    this.displays = displays;
+    this.vocabulary = vocabulary;
+    this.tokenIds = tokenIds;
+    this.postings = postings;
+    this.termIds = new int[concepts.size()][];
+    this.termCounts = new int[concepts.size()][];
+    this.norms = new double[concepts.size()];
+    this.wordCounts = new int[concepts.size()];
+    for (int id = 0; id < concepts.size(); id++) {
+      TermVector vector = vectorize(conceptTokens[id]);
+      termIds[id] = vector.termIds();
+      termCounts[id] = vector.termCounts();
+      norms[id] = vector.norm();
+      wordCounts[id] = conceptTokens[id].length;
+    }
+    this.trigramIndex = settings.trigram() ? TrigramIndex.build(vocabulary) : null;
+    int[] frequencies = new int[vocabulary.length];
+    for (int tokenId = 0; tokenId < vocabulary.length; tokenId++) {
+      frequencies[tokenId] = postings[tokenId].length;
+    }
+    this.spellingCorrector =
+        SpellingCorrector.build(
+            vocabulary,
+            tokenIds.keySet(),
+            frequencies,
+            settings.maxEditDistance(),
+            settings.prefixLength());
+    this.phoneticIndex =
+        settings.phonetic()
+            ? PhoneticIndex.build(vocabulary, tokenIds.keySet(), frequencies)
+            : null;
+    this.medicationIndex = settings.medication() ? MedicationIndex.build(displays) : null;
+    this.minHashIndex =
+        settings.minHash() == null ? null : MinHashIndex.build(conceptTokens, settings.minHash());
+    this.fingerprint = fingerprint(concepts);
+  }
+
+  /** Hex of the first 8 bytes of the SHA-256 of the codes and displays, in load order. */
+  private static String fingerprint(List<? extends Displayable> concepts) {
+    MessageDigest digest = sha256();
+    for (Displayable concept : concepts) {
+      digest.update(String.valueOf(concept.getCode()).getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) '\t');
+      digest.update(String.valueOf(concept.getDisplay()).getBytes(StandardCharsets.UTF_8));
+      digest.update((byte) '\n');
+    }
+    return HexFormat.of().formatHex(digest.digest(), 0, 8);
+  }
+
+  static MessageDigest sha256() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /** Builds the index without spelling correction or phonetic keys. */
+  public static <T extends Displayable> TerminologyIndex<T> build(List<T> concepts) {
+    return build(concepts, Settings.NONE);
+  }
+
+  /** Builds the index of {@code concepts}, in the given order, with the given lookup settings. */
+  public static <T extends Displayable> TerminologyIndex<T> build(
+      List<T> concepts, Settings settings) {
+    List<T> ordered = List.copyOf(concepts);
+    String[] displays = new String[ordered.size()];
+    String[][] conceptTokens = new String[ordered.size()][];
+    TreeMap<String, List<Integer>> tokenPostings = new TreeMap<>();
+    for (int id = 0; id < ordered.size(); id++) {
+      String display = ordered.get(id).getDisplay();
+      displays[id] = display == null ? "" : display.toLowerCase(Locale.ROOT);
+      conceptTokens[id] = tokenize(displays[id]);
+      for (String token : conceptTokens[id]) {
+        List<Integer> ids = tokenPostings.computeIfAbsent(token, key -> new ArrayList<>());
+        if (ids.isEmpty() || ids.get(ids.size() - 1) != id) {
+          ids.add(id);
+        }
+      }
+    }
+
+    String[] vocabulary = tokenPostings.keySet().toArray(new String[0]);
+    Map<String, Integer> tokenIds = new HashMap<>(vocabulary.length * 2);
+    int[][] postings = new int[vocabulary.length][];
+    for (int tokenId = 0; tokenId < vocabulary.length; tokenId++) {
+      tokenIds.put(vocabulary[tokenId], tokenId);
+      postings[tokenId] =
+          tokenPostings.get(vocabulary[tokenId]).stream().mapToInt(Integer::intValue).toArray();
+    }
+    return new TerminologyIndex<>(
+        ordered,
+        displays,
+        vocabulary,
+        tokenIds,
+        postings,
+        conceptTokens,
+        settings);
+  }
+
+  /** Splits lower-cased text into its non-empty whitespace separated tokens. */
+  public static String[] tokenize(String text) {
+    String trimmed = text.trim();
+    return trimmed.isEmpty() ? new String[0] : trimmed.split("\\s+");
+  }
+
+  /**
+   * Returns up to {@code limit} concepts, in load order, whose display contains {@code display}
+   * ignoring case.
+   */
+  public List<T> findByDisplay(String display, int limit) {
+    int[] ids = candidates(display, limit);
+    List<T> matches = new ArrayList<>(ids.length);
+    for (int id : ids) {
+      matches.add(concepts.get(id));
+    }
+    return matches;
+  }
+
+  /** Ids of the concepts {@link #findByDisplay(String, int)} would return. */
+  public int[] candidates(String display, int limit) {
+    if (display == null || limit <= 0) {
+      return new int[0];
+    }
+    String needle = display.toLowerCase(Locale.ROOT);
+    String[] tokens = tokenize(needle);
+    if (tokens.length == 0) {
+      return new int[0];
+    }
+
+    return substringMatches(needle, candidateIds(tokens), limit);
+  }
+
+  /** The first {@code limit} of {@code candidates}, in load order, whose display has the needle. */
+  private int[] substringMatches(String needle, BitSet candidates, int limit) {
+    int[] matches = new int[Math.min(limit, candidates.cardinality())];
+    int found = 0;
+    for (int id = candidates.nextSetBit(0);
+        id >= 0 && found < matches.length;
+        id = candidates.nextSetBit(id + 1)) {
+      if (displays[id].contains(needle)) {
+        matches[found++] = id;
+      }
+    }
+    return found == matches.length ? matches : Arrays.copyOf(matches, found);
+  }
+
+  /**
+   * Concept with the given code, or null; a code listed more than once resolves to its last
+   * display, as {@link #getDistinctConcepts()} does.
+   */
+  public T findByCode(String code) {
+    return byCode.get(code);
+  }
+
+  /**
+   * Concept whose display equals {@code normalizedDisplay}, the lower-cased input with its words
+   * separated by single spaces, or null. A display listed more than once resolves to its first
+   * concept, as {@link #bestMatch(String, int)} does.
+   */
+  public T exactMatch(String normalizedDisplay) {
+    return byDisplay.get(normalizedDisplay);
+  }
+
+  /**
+   * Best cosine match for {@code input} among the substring candidates, or null when there is none.
+   * With a {@link MinHashIndex}, more than {@code candidateLimit} candidates are pruned to those
+   * sharing a band with the input.
+   */
+  public T bestMatch(String input, int candidateLimit) {
+    if (input == null || candidateLimit <= 0) {
+      return null;
+    }
+    String needle = input.toLowerCase(Locale.ROOT);
+    String[] tokens = tokenize(needle);
+    if (tokens.length == 0) {
+      return null;
+    }
+    int[] ids = retrieve(input, needle, tokens, candidateIds(tokens), candidateLimit);
+    List<ScoredConcept<T>> best = topMatches(input, ids, 1);
+    return best.isEmpty() ? null : best.get(0).concept();
+  }
+
+  /**
+   * {@link #bestMatch(String, int)} of every input. The vocabulary is scanned once for all the
+   * inputs of one or two words, which otherwise each test every vocabulary word on their own.
+   *
+   * @return best match per input, absent for inputs without one
+   */
+  public Map<String, T> bestMatches(Collection<String> inputs, int candidateLimit) {
+    Map<String, T> matches = new HashMap<>();
+    List<String> needles = new ArrayList<>();
+    List<String[]> needleTokens = new ArrayList<>();
+    List<String> pending = new ArrayList<>();
+    for (String input : inputs) {
+      String needle = input == null ? "" : input.toLowerCase(Locale.ROOT);
+      String[] tokens = tokenize(needle);
+      if (tokens.length > 0 && candidateLimit > 0) {
+        pending.add(input);
+        needles.add(needle);
+        needleTokens.add(tokens);
+      }
+    }
+    BitSet[] scanned = scanVocabulary(needleTokens);
+    for (int i = 0; i < pending.size(); i++) {
+      String[] tokens = needleTokens.get(i);
+      BitSet candidates;
+      if (tokens.length == 1) {
+        candidates = scanned[i];
+      } else if (tokens.length == 2) {
+        candidates = unionOfPrefix(tokens[1]);
+        candidates.and(scanned[i]);
+      } else {
+        candidates = candidateIds(tokens);
+      }
+      int[] ids = retrieve(pending.get(i), needles.get(i), tokens, candidates, candidateLimit);
+      List<ScoredConcept<T>> best = topMatches(pending.get(i), ids, 1);
+      if (!best.isEmpty()) {
+        matches.put(pending.get(i), best.get(0).concept());
+      }
+    }
+    return matches;
+  }
+
+  /**
+   * Per input of one or two words, the concepts having a word that contains the only word, or ends
+   * with the first one, collected in a single pass over the vocabulary; null for longer inputs.
+   */
+  private BitSet[] scanVocabulary(List<String[]> inputs) {
+    BitSet[] scanned = new BitSet[inputs.size()];
+    boolean any = false;
+    for (int i = 0; i < scanned.length; i++) {
+      if (inputs.get(i).length <= 2) {
+        scanned[i] = new BitSet(concepts.size());
+        any = true;
+      }
+    }
+    for (int tokenId = 0; any && tokenId < vocabulary.length; tokenId++) {
+      String token = vocabulary[tokenId];
+      for (int i = 0; i < scanned.length; i++) {
+        if (scanned[i] == null) {
+          continue;
+        }
+        String[] tokens = inputs.get(i);
+        if (tokens.length == 1 ? token.contains(tokens[0]) : token.endsWith(tokens[0])) {
+          for (int id : postings[tokenId]) {
+            scanned[i].set(id);
+          }
+        }
+      }
+    }
+    return scanned;
+  }
+
+  /**
+   * Substring candidates of an input: the first {@code limit} in load order or, when there are more
+   * and the index has a {@link MinHashIndex}, those of its candidates that contain the needle. A
+   * sampled lookup also scores every substring candidate in the background, to count whether the
+   * pruning kept the best one.
+   */
+  private int[] retrieve(
+      String input, String needle, String[] tokens, BitSet candidates, int limit) {
+    int[] matches = substringMatches(needle, candidates, minHashIndex == null ? limit : limit + 1);
+    if (matches.length <= limit) {
+      return matches;
+    }
+    long start = System.nanoTime();
+    int[] approximate = minHashIndex.candidates(tokens);
+    int[] pruned = new int[approximate.length];
+    int found = 0;
+    for (int id : approximate) {
+      if (candidates.get(id) && displays[id].contains(needle)) {
+        pruned[found++] = id;
+      }
+    }
+    minHashIndex.recordLookup(found, System.nanoTime() - start);
+    if (found == 0) {
+      return Arrays.copyOf(matches, limit);
+    }
+    int[] kept = Arrays.copyOf(pruned, found);
+    minHashIndex.sample(
+        () -> {
+          List<ScoredConcept<T>> best = topMatches(input, kept, 1);
+          List<ScoredConcept<T>> exhaustive =
+              topMatches(input, substringMatches(needle, candidates, Integer.MAX_VALUE), 1);
+          return exhaustive.isEmpty()
+              || (!best.isEmpty() && best.get(0).score() >= exhaustive.get(0).score());
+        });
+    return kept;
+  }
+
+  /**
+   * Product whose ingredients, strengths and dose form match {@code input}, ex: "aspirin 75mg tab",
+   * or null when there is no medication index or no such product.
+   */
+  public T medicationMatch(String input) {
+    if (medicationIndex == null) {
+      return null;
+    }
+    int id = medicationIndex.match(input);
+    return id < 0 ? null : concepts.get(id);
+  }
+
+  /**
+   * Replaces the misspelled words of {@code input} by their closest vocabulary words.
+   *
+   * @return the lower-cased, corrected input, or null when no word needed correcting
+   */
+  public String correctSpelling(String input) {
+    if (input == null) {
+      return null;
+    }
+    String[] tokens = tokenize(input.toLowerCase(Locale.ROOT));
+    String[] corrected = spellingCorrector.correct(tokens);
+    return corrected == tokens ? null : String.join(" ", corrected);
+  }
+
+  /**
+   * Replaces the words of {@code input} that are not in the vocabulary by the vocabulary words that
+   * sound the same.
+   *
+   * @return the lower-cased, respelled input, or null when there is no phonetic index or no word
+   *     was replaced
+   */
+  public String respellPhonetically(String input) {
+    if (input == null || phoneticIndex == null) {
+      return null;
+    }
+    String[] tokens = tokenize(input.toLowerCase(Locale.ROOT));
+    String[] respelled = phoneticIndex.respell(tokens);
+    return respelled == tokens ? null : String.join(" ", respelled);
+  }
+
+  /**
+   * Replaces every word of {@code input} that is not in the vocabulary by the vocabulary word
+   * closest to it by character trigram similarity, ex: "ibuprofn" by "ibuprofen", so the repaired
+   * input can be matched by cosine similarity again.
+   *
+   * @return the lower-cased, repaired input, or null when the index was built without trigrams, no
+   *     word needed repairing or a word has no vocabulary word with a Dice coefficient of at least
+   *     {@code minSimilarity}
+   */
+  public String repairWords(String input, double minSimilarity) {
+    if (input == null || trigramIndex == null) {
+      return null;
+    }
+    String[] tokens = tokenize(input.toLowerCase(Locale.ROOT));
+    String[] repaired = null;
+    for (int i = 0; i < tokens.length; i++) {
+      if (tokenIds.containsKey(tokens[i])) {
+        continue;
+      }
+      TopK nearest = trigramIndex.nearest(tokens[i], 1, minSimilarity);
+      if (nearest.size() == 0) {
+        return null;
+      }
+      if (repaired == null) {
+        repaired = tokens.clone();
+      }
+      repaired[i] = vocabulary[nearest.drainIds(null)[0]];
+    }
+    return repaired == null ? null : String.join(" ", repaired);
+  }
+
+  /**
+   * Scores the given candidates against {@code input} by cosine similarity of their term frequency
+   * vectors and returns the {@code k} best, highest first. Candidates with more than two words
+   * beyond the input are skipped, and ties go to the earlier candidate.
+   */
+  public List<ScoredConcept<T>> topMatches(String input, int[] candidateIds, int k) {
+    if (input == null || candidateIds.length == 0) {
+      return Collections.emptyList();
+    }
+    String[] inputTokens = tokenize(input.toLowerCase(Locale.ROOT));
+    if (inputTokens.length == 0) {
+      return Collections.emptyList();
+    }
+    TermVector query = vectorize(inputTokens);
+    int maxWords = inputTokens.length + 2;
+
+    TopK topK = new TopK(k);
+    for (int id : candidateIds) {
+      if (wordCounts[id] <= maxWords) {
+        topK.offer(id, cosine(query, id));
+      }
+    }
+    double[] scores = new double[topK.size()];
+    int[] ids = topK.drainIds(scores);
+    List<ScoredConcept<T>> matches = new ArrayList<>(ids.length);
+    for (int i = 0; i < ids.length; i++) {
+      matches.add(new ScoredConcept<>(concepts.get(ids[i]), scores[i]));
+    }
+    return matches;
+  }
+
+  /**
+   * Typeahead ranking: concepts having every query word but the last as a display word, and a
+   * display word that starts with the last one. The last word is scored as the display word it
+   * completes, so "diabetes mell" ranks like "diabetes mellitus"; ties keep load order. At most
+   * {@code SEARCH_CANDIDATE_LIMIT} concepts are scored, ex: the first ones having a word starting
+   * with a single typed letter.
+   *
+   * @return up to {@code k} concepts, best first
+   */
+  public List<ScoredConcept<T>> search(String query, int k) {
+    if (query == null || k <= 0) {
+      return Collections.emptyList();
+    }
+    String[] tokens = tokenize(query.toLowerCase(Locale.ROOT));
+    if (tokens.length == 0) {
+      return Collections.emptyList();
+    }
+    int last = tokens.length - 1;
+    int[] from = new int[tokens.length];
+    int[] to = new int[tokens.length];
+    BitSet words = null;
+    for (int i = 0; i < last; i++) {
+      Integer tokenId = tokenIds.get(tokens[i]);
+      if (tokenId == null) {
+        return Collections.emptyList();
+      }
+      from[i] = tokenId;
+      to[i] = tokenId + 1;
+      BitSet withWord = new BitSet(concepts.size());
+      for (int id : postings[tokenId]) {
+        withWord.set(id);
+      }
+      if (words == null) {
+        words = withWord;
+      } else {
+        words.and(withWord);
+      }
+      if (words.isEmpty()) {
+        return Collections.emptyList();
+      }
+    }
+    from[last] = prefixStart(tokens[last]);
+    to[last] = from[last];
+    while (to[last] < vocabulary.length && vocabulary[to[last]].startsWith(tokens[last])) {
+      to[last]++;
+    }
+    if (from[last] == to[last]) {
+      return Collections.emptyList();
+    }
+
+    BitSet candidates =
+        words == null
+            ? withPrefix(tokens[last], from[last], to[last])
+            : completing(words, from[last], to[last]);
+    TopK topK = new TopK(k);
+    for (int id = candidates.nextSetBit(0); id >= 0; id = candidates.nextSetBit(id + 1)) {
+      topK.offer(id, completedCosine(from, to, id));
+    }
+    double[] scores = new double[topK.size()];
+    int[] ids = topK.drainIds(scores);
+    List<ScoredConcept<T>> matches = new ArrayList<>(ids.length);
+    for (int i = 0; i < ids.length; i++) {
+      matches.add(new ScoredConcept<>(concepts.get(ids[i]), scores[i]));
+    }
+    return matches;
+  }
+
+  /**
+   * Up to {@code SEARCH_CANDIDATE_LIMIT} concepts having a word with a token id in {@code [from,
+   * to)}, the ones having the prefix itself as a word first.
+   */
+  private BitSet withPrefix(String prefix, int from, int to) {
+    BitSet candidates = new BitSet(concepts.size());
+    int found = 0;
+    Integer exact = tokenIds.get(prefix);
+    if (exact != null) {
+      found = addPostings(exact, candidates, found);
+    }
+    for (int tokenId = from; tokenId < to && found < SEARCH_CANDIDATE_LIMIT; tokenId++) {
+      if (exact == null || tokenId != exact) {
+        found = addPostings(tokenId, candidates, found);
+      }
+    }
+    return candidates;
+  }
+
+  private int addPostings(int tokenId, BitSet candidates, int found) {
+    for (int i = 0; i < postings[tokenId].length && found < SEARCH_CANDIDATE_LIMIT; i++) {
+      int id = postings[tokenId][i];
+      if (!candidates.get(id)) {
+        candidates.set(id);
+        found++;
+      }
+    }
+    return found;
+  }
+
+  /**
+   * Up to {@code SEARCH_CANDIDATE_LIMIT} of the concepts in {@code words} having a word with a
+   * token id in {@code [from, to)}.
+   */
+  private BitSet completing(BitSet words, int from, int to) {
+    BitSet candidates = new BitSet(concepts.size());
+    int found = 0;
+    for (int id = words.nextSetBit(0);
+        id >= 0 && found < SEARCH_CANDIDATE_LIMIT;
+        id = words.nextSetBit(id + 1)) {
+      int position = Arrays.binarySearch(termIds[id], from);
+      position = position >= 0 ? position : -position - 1;
+      if (position < termIds[id].length && termIds[id][position] < to) {
+        candidates.set(id);
+        found++;
+      }
+    }
+    return candidates;
+  }
+
+  /**
+   * Cosine between the concept and the query whose i-th word is replaced by the first word of the
+   * concept with a token id in {@code [from[i], to[i])}.
+   */
+  private double completedCosine(int[] from, int[] to, int id) {
+    int[] conceptIds = termIds[id];
+    int[] completed = new int[from.length];
+    for (int i = 0; i < from.length; i++) {
+      int position = Arrays.binarySearch(conceptIds, from[i]);
+      position = position >= 0 ? position : -position - 1;
+      completed[i] =
+          position < conceptIds.length && conceptIds[position] < to[i]
+              ? conceptIds[position]
+              : -1;
+    }
+    Arrays.sort(completed);
+
+    long dot = 0;
+    long sumOfSquares = 0;
+    int i = 0;
+    while (i < completed.length) {
+      int j = i;
+      while (j < completed.length && completed[j] == completed[i]) {
+        j++;
+      }
+      int count = j - i;
+      sumOfSquares += (long) count * count;
+      if (completed[i] >= 0) {
+        int position = Arrays.binarySearch(conceptIds, completed[i]);
+        dot += (long) count * termCounts[id][position];
+      }
+      i = j;
+    }
+    double norm = Math.sqrt(sumOfSquares) * norms[id];
+    return norm <= 0 ? 0.0 : dot / norm;
+  }
+
+  private double cosine(TermVector query, int id) {
+    if (query.norm() <= 0 || norms[id] <= 0) {
+      return 0.0;
+    }
+    int[] queryIds = query.termIds();
+    int[] queryCounts = query.termCounts();
+    int[] conceptIds = termIds[id];
+    int[] conceptCounts = termCounts[id];
+    long dot = 0;
+    int i = 0;
+    int j = 0;
+    while (i < queryIds.length && j < conceptIds.length) {
+      if (queryIds[i] == conceptIds[j]) {
+        dot += (long) queryCounts[i++] * conceptCounts[j++];
+      } else if (queryIds[i] < conceptIds[j]) {
+        i++;
+      } else {
+        j++;
+      }
+    }
+    return dot / (query.norm() * norms[id]);
+  }
+
+  /**
+   * Term frequency vector over the interned token ids. Tokens outside the vocabulary cannot match
+   * any concept but still count towards the norm.
+   */
+  private TermVector vectorize(String[] tokens) {
+    int[] ids = new int[tokens.length];
+    int known = 0;
+    long sumOfSquares = 0;
+    Map<String, Integer> unknownCounts = null;
+    for (String token : tokens) {
+      Integer tokenId = tokenIds.get(token);
+      if (tokenId != null) {
+        ids[known++] = tokenId;
+      } else {
+        if (unknownCounts == null) {
+          unknownCounts = new HashMap<>();
+        }
+        unknownCounts.merge(token, 1, Integer::sum);
+      }
+    }
+    if (unknownCounts != null) {
+      for (int count : unknownCounts.values()) {
+        sumOfSquares += (long) count * count;
+      }
+    }
+    Arrays.sort(ids, 0, known);
+
+    int distinct = 0;
+    int[] counts = new int[known];
+    for (int i = 0; i < known; i++) {
+      if (distinct > 0 && ids[distinct - 1] == ids[i]) {
+        counts[distinct - 1]++;
+      } else {
+        ids[distinct] = ids[i];
+        counts[distinct++] = 1;
+      }
+    }
+    for (int i = 0; i < distinct; i++) {
+      sumOfSquares += (long) counts[i] * counts[i];
+    }
+    return new TermVector(
+        Arrays.copyOf(ids, distinct), Arrays.copyOf(counts, distinct), Math.sqrt(sumOfSquares));
+  }
+
+  private record TermVector(int[] termIds, int[] termCounts, double norm) {}
+
+  /**
+   * Superset of the concepts that can contain the needle. A single token may sit anywhere inside a
+   * display token; with several tokens the inner ones must be whole display tokens, the first one a
+   * suffix and the last one a prefix of a display token.
+   */
+  private BitSet candidateIds(String[] tokens) {
+    if (tokens.length == 1) {
+      return unionOfTokens(token -> token.contains(tokens[0]));
+    }
+    if (tokens.length > 2) {
+      int[] narrowest = null;
+      for (int i = 1; i < tokens.length - 1; i++) {
+        Integer tokenId = tokenIds.get(tokens[i]);
+        if (tokenId == null) {
+          return new BitSet();
+        }
+        if (narrowest == null || postings[tokenId].length < narrowest.length) {
+          narrowest = postings[tokenId];
+        }
+      }
+      BitSet candidates = new BitSet(concepts.size());
+      for (int id : narrowest) {
+        candidates.set(id);
+      }
+      return candidates;
+    }
+    BitSet withPrefix = unionOfPrefix(tokens[1]);
+    if (withPrefix.isEmpty()) {
+      return withPrefix;
+    }
+    withPrefix.and(unionOfTokens(token -> token.endsWith(tokens[0])));
+    return withPrefix;
+  }
+
+  private BitSet unionOfPrefix(String prefix) {
+    BitSet candidates = new BitSet(concepts.size());
+    int from = prefixStart(prefix);
+    for (int tokenId = from;
+        tokenId < vocabulary.length && vocabulary[tokenId].startsWith(prefix);
+        tokenId++) {
+      for (int id : postings[tokenId]) {
+        candidates.set(id);
+      }
+    }
+    return candidates;
+  }
+
+  private BitSet unionOfTokens(Predicate<String> tokenFilter) {
+    BitSet candidates = new BitSet(concepts.size());
+    for (int tokenId = 0; tokenId < vocabulary.length; tokenId++) {
+      if (tokenFilter.test(vocabulary[tokenId])) {
+        for (int id : postings[tokenId]) {
+          candidates.set(id);
+        }
+      }
+    }
+    return candidates;
+  }
+
+  /** First position in the sorted vocabulary that is not lexically smaller than the prefix. */
+  private int prefixStart(String prefix) {
+    int position = Arrays.binarySearch(vocabulary, prefix);
+    return position >= 0 ? position : -position - 1;
+  }
+
+  public List<T> getConcepts() {
+    return concepts;
+  }
+
+  /**
+   * One concept per code, in load order; a code listed more than once keeps its last display, as
+   * the database table does.
+   */
+  public List<T> getDistinctConcepts() {
+    return distinctConcepts;
+  }
+
+  public int size() {
+    return concepts.size();
+  }
+
+  public int vocabularySize() {
+    return vocabulary.length;
+  }
+
+  /**
+   * Hash of the codes and displays of the category, which differs whenever a code or display of
+   * the loaded list changes, whatever the version it was loaded under.
+   */
+  public String fingerprint() {
+    return fingerprint;
+  }
+
+  public SpellingCorrector getSpellingCorrector() {
+    return spellingCorrector;
+  }
+
+  /** MinHash index of the category, null when not built. */
+  public MinHashIndex getMinHashIndex() {
+    return minHashIndex;
+  }
+}
@@ -0,0 +1,81 @@
+/* (C) 2024 */
+package com.nha.abdm.fhir.mapper.rest.database.h2.index;
+
+import com.nha.abdm.fhir.mapper.rest.database.h2.services.Displayable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import org.springframework.stereotype.Component;
+
+/**
+ * Holds the published {@link TerminologySnapshot} of the category indexes, the memory-mapped index
+ * of an imported release where one is available, and the optional Lucene index of the snapshot.
+ *
+ * <p>Snapshots are replaced copy-on-write. A request pins the snapshot current at its start, so a
+ * conversion running while a new version is published keeps resolving against the old one.
+ */
+@Component
+public class TerminologyIndexRegistry {
+  public static final String INITIAL_VERSION = "classpath";
+
+  private final AtomicReference<TerminologySnapshot> snapshot =
+      new AtomicReference<>(TerminologySnapshot.empty(INITIAL_VERSION));
+  private final ThreadLocal<TerminologySnapshot> pinned = new ThreadLocal<>();
+  private final Map<Class<?>, MappedTerminologyIndex> releaseIndexes = new ConcurrentHashMap<>();
+  private final AtomicReference<LuceneTerminologyIndex> luceneIndex = new AtomicReference<>();
+
+  /** Adds or replaces the index of one category in the latest snapshot. */
+  public <T extends Displayable> void register(Class<T> type, TerminologyIndex<T> index) {
+    snapshot.updateAndGet(current -> current.with(type, index));
+  }
+
+  /** Atomically replaces the latest snapshot. */
+  public void publish(TerminologySnapshot next) {
+    snapshot.set(next);
+  }
+
+  /** Snapshot pinned by the current request, or the latest one. */
+  public TerminologySnapshot current() {
+    TerminologySnapshot current = pinned.get();
+    return current != null ? current : snapshot.get();
+  }
+
+  public TerminologySnapshot latest() {
+    return snapshot.get();
+  }
+
+  public <T extends Displayable> TerminologyIndex<T> get(Class<T> type) {
+    return current().get(type);
+  }
+
+  public void pin() {
+    pinned.set(snapshot.get());
+  }
+
+  public void unpin() {
+    pinned.remove();
+  }
+
+  public void registerRelease(Class<?> type, MappedTerminologyIndex index) {
+    releaseIndexes.put(type, index);
+  }
+
+  public MappedTerminologyIndex getRelease(Class<?> type) {
+    return releaseIndexes.get(type);
+  }
+
+  /**
+   * Replaces the Lucene index.
+   *
+   * @return the previous index, for the caller to close
+   */
+  public LuceneTerminologyIndex registerLucene(LuceneTerminologyIndex index) {
+    return luceneIndex.getAndSet(index);
+  }
+
+  /** Lucene index built from {@code snapshot}, or null when there is none for its version. */
+  public LuceneTerminologyIndex getLucene(TerminologySnapshot snapshot) {
+    LuceneTerminologyIndex index = luceneIndex.get();
+    return index != null && snapshot.version().equals(index.getVersion()) ? index : null;
+  }
+}
@@ -0,0 +1,53 @@
+/* (C) 2024 */
+package com.nha.abdm.fhir.mapper.rest.database.h2.index;
+
+import com.nha.abdm.fhir.mapper.rest.database.h2.services.Displayable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+/** Immutable set of category indexes published together under one version. */
+public record TerminologySnapshot(
+    String version, Instant loadedAt, Map<Class<?>, TerminologyIndex<?>> indexes) {
+
+  public TerminologySnapshot {
+    indexes = Map.copyOf(indexes);
+  }
+
+  public static TerminologySnapshot empty(String version) {
+    return new TerminologySnapshot(version, Instant.now(), Map.of());
+  }
+
+  /** Copy of this snapshot, under the same version, with the index of one category replaced. */
+  public TerminologySnapshot with(Class<?> type, TerminologyIndex<?> index) {
+    Map<Class<?>, TerminologyIndex<?>> next = new HashMap<>(indexes);
+    next.put(type, index);
+    return new TerminologySnapshot(version, Instant.now(), next);
+  }
+
+  /**
+   * Hash of the category names and the {@link TerminologyIndex#fingerprint()} of their codes and
+   * displays, which tells the loaded code lists apart beyond the version, ex: the bundled lists
+   * keep the initial version across deploys.
+   */
+  public String fingerprint() {
+    List<String> categories = new ArrayList<>();
+    indexes.forEach(
+        (type, index) -> categories.add(type.getSimpleName() + ':' + index.fingerprint()));
+    Collections.sort(categories);
+    MessageDigest digest = TerminologyIndex.sha256();
+    digest.update(String.join(";", categories).getBytes(StandardCharsets.UTF_8));
+    return HexFormat.of().formatHex(digest.digest(), 0, 8);
+  }
+
+  @SuppressWarnings("unchecked")
+  public <T extends Displayable> TerminologyIndex<T> get(Class<T> type) {
+    return (TerminologyIndex<T>) indexes.get(type);
+  }
+}
@@ -0,0 +1,104 @@
+/* (C) 2024 */
+package com.nha.abdm.fhir.mapper.rest.database.h2.index;
+
+/**
+ * Bounded min-heap keeping the {@code k} best scored concept ids seen so far. Offering a candidate
+ * never allocates; on equal scores the candidate offered first wins.
+ */
+public class TopK {
+  private final int[] ids;
+  private final double[] scores;
+  private final int[] offerOrder;
+  private int size;
+  private int offered;
+
+  public TopK(int k) {
+    this.ids = new int[k];
+    this.scores = new double[k];
+    this.offerOrder = new int[k];
+  }
+
+  public void offer(int id, double score) {
+    if (ids.length == 0) {
+      return;
+    }
+    int order = offered++;
+    if (size < ids.length) {
+      ids[size] = id;
+      scores[size] = score;
+      offerOrder[size] = order;
+      siftUp(size++);
+    } else if (score > scores[0]) {
+      ids[0] = id;
+      scores[0] = score;
+      offerOrder[0] = order;
+      siftDown(0);
+    }
+  }
+
+  public int size() {
+    return size;
+  }
+
+  /** Ids ordered from best to worst; drains the heap. */
+  public int[] drainIds(double[] scoresOut) {
+    int[] ordered = new int[size];
+    for (int position = size - 1; position >= 0; position--) {
+      ordered[position] = ids[0];
+      if (scoresOut != null) {
+        scoresOut[position] = scores[0];
+      }
+      size--;
+      ids[0] = ids[size];
+      scores[0] = scores[size];
+      offerOrder[0] = offerOrder[size];
+      siftDown(0);
+    }
+    return ordered;
+  }
+
+  /** True when the entry at {@code a} ranks below the entry at {@code b}. */
+  private boolean worse(int a, int b) {
+    return scores[a] < scores[b] || (scores[a] == scores[b] && offerOrder[a] > offerOrder[b]);
+  }
+
+  private void siftUp(int position) {
+    while (position > 0) {
+      int parent = (position - 1) >>> 1;
+      if (!worse(position, parent)) {
+        return;
+      }
+      swap(position, parent);
+      position = parent;
+    }
+  }
+
+  private void siftDown(int position) {
+    while (true) {
+      int child = 2 * position + 1;
+      if (child >= size) {
+        return;
+      }
+      if (child + 1 < size && worse(child + 1, child)) {
+        child++;
+      }
+      if (!worse(child, position)) {
+        return;
+      }
+      swap(position, child);
+      position = child;
+    }
+  }
+
+  private void swap(int a, int b) {
+    int id = ids[a];
+    ids[a] = ids[b];
+    ids[b] = id;
+    double score = scores[a];
+    scores[a] = scores[b];
+    scores[b] = score;
+    int order = offerOrder[a];
+    offerOrder[a] = offerOrder[b];
+    offerOrder[b] = order;
+  }
+}
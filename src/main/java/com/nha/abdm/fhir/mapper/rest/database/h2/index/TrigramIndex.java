@@ -0,0 +1,131 @@
+/* (C) 2024 */
+package com.nha.abdm.fhir.mapper.rest.database.h2.index;
+
+import java.util.*;
+
+/**
+ * Character trigram index over the vocabulary words of one category, used to repair misspelled
+ * words that neither the spelling corrector nor the phonetic keys resolve. Every word is padded
+ * with a space on both sides before it is cut into trigrams, so word starts and ends weigh in as
+ * well.
+ *
+ * <p>Candidates are ranked by the Dice coefficient of their trigram sets. Trigrams shared by more
+ * than {@link #MAX_POSTINGS} concepts are not walked; when that holds for every trigram of the
+ * input, the rarest one is walked alone. Overlaps are counted in a per-thread int array sized to
+ * the category, and only the entries of the concepts reached are cleared afterwards, so a lookup
+ * costs the postings it walks rather than the size of the category.
+ */
+public class TrigramIndex {
+  static final int MAX_POSTINGS = 5000;
+
+  private final Map<String, int[]> postings;
+  private final int[] trigramCounts;
+  private final ThreadLocal<Overlaps> overlaps;
+
+  private TrigramIndex(Map<String, int[]> postings, int[] trigramCounts) {
+    this.postings = postings;
+    this.trigramCounts = trigramCounts;
+    this.overlaps = ThreadLocal.withInitial(() -> new Overlaps(trigramCounts.length));
+  }
+
+  /** Builds the index of the lower-cased texts; ids are positions in the array. */
+  public static TrigramIndex build(String[] texts) {
+    Map<String, List<Integer>> trigramPostings = new HashMap<>();
+    int[] trigramCounts = new int[texts.length];
+    for (int id = 0; id < texts.length; id++) {
+      Set<String> trigrams = trigrams(texts[id]);
+      trigramCounts[id] = trigrams.size();
+      for (String trigram : trigrams) {
+        trigramPostings.computeIfAbsent(trigram, key -> new ArrayList<>()).add(id);
+      }
+    }
+    Map<String, int[]> postings = new HashMap<>(trigramPostings.size() * 2);
+    trigramPostings.forEach(
+        (trigram, ids) ->
+            postings.put(trigram, ids.stream().mapToInt(Integer::intValue).toArray()));
+    return new TrigramIndex(postings, trigramCounts);
+  }
+
+  /** Distinct trigrams of the space padded words of lower-cased text. */
+  public static Set<String> trigrams(String text) {
+    Set<String> trigrams = new LinkedHashSet<>();
+    for (String token : TerminologyIndex.tokenize(text)) {
+      String padded = " " + token + " ";
+      for (int i = 0; i + 3 <= padded.length(); i++) {
+        trigrams.add(padded.substring(i, i + 3));
+      }
+    }
+    return trigrams;
+  }
+
+  /**
+   * Returns the {@code k} concepts sharing the most trigrams with {@code input}, relative to their
+   * sizes, among those whose Dice coefficient reaches {@code minSimilarity}.
+   */
+  public TopK nearest(String input, int k, double minSimilarity) {
+    TopK topK = new TopK(k);
+    Set<String> queryTrigrams = trigrams(input.toLowerCase(Locale.ROOT));
+    if (queryTrigrams.isEmpty()) {
+      return topK;
+    }
+    int[] rarest = null;
+    Overlaps counted = overlaps.get();
+    for (String trigram : queryTrigrams) {
+      int[] ids = postings.get(trigram);
+      if (ids == null) {
+        continue;
+      }
+      if (ids.length > MAX_POSTINGS) {
+        if (rarest == null || ids.length < rarest.length) {
+          rarest = ids;
+        }
+        continue;
+      }
+      for (int id : ids) {
+        counted.add(id);
+      }
+    }
+    if (counted.size == 0 && rarest != null) {
+      for (int id : rarest) {
+        counted.add(id);
+      }
+    }
+    Arrays.sort(counted.touched, 0, counted.size);
+    for (int i = 0; i < counted.size; i++) {
+      int id = counted.touched[i];
+      double dice = 2.0 * counted.counts[id] / (queryTrigrams.size() + trigramCounts[id]);
+      if (dice >= minSimilarity) {
+        topK.offer(id, dice);
+      }
+    }
+    counted.clear();
+    return topK;
+  }
+
+  /** Trigram overlap per concept, and the concepts whose overlap is not zero. */
+  private static final class Overlaps {
+    private final int[] counts;
+    private int[] touched = new int[16];
+    private int size;
+
+    private Overlaps(int concepts) {
+      this.counts = new int[concepts];
+    }
+
+    private void add(int id) {
+      if (counts[id]++ == 0) {
+        if (size == touched.length) {
+          touched = Arrays.copyOf(touched, size * 2);
+        }
+        touched[size++] = id;
+      }
+    }
+
+    private void clear() {
+      for (int i = 0; i < size; i++) {
+        counts[touched[i]] = 0;
+      }
+      size = 0;
+    }
+  }
+}
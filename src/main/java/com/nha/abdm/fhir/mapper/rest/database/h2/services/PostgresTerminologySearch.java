@@ -0,0 +1,210 @@
+/* (C) 2024 */
+package com.nha.abdm.fhir.mapper.rest.database.h2.services;
+
+import com.nha.abdm.fhir.mapper.rest.database.h2.index.MappedTerminologyIndex;
+import com.nha.abdm.fhir.mapper.rest.database.h2.tables.LoincObservation;
+import java.util.Collection;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Fuzzy lookups pushed down to a shared PostgreSQL store, enabled with {@code
+ * fhir.mapper.terminology.store=postgres} (see application-postgres).
+ *
+ * <p>Every version of a code list is stored once, under the content hash of its codes and displays,
+ * by the first instance that loads it: {@code terminology_list} records the versions stored, with
+ * the last time an instance loaded them, and {@code terminology_concept} holds their rows. The rows
+ * of a version are never updated, so a lookup restricted to the version of the list its snapshot
+ * holds only sees the codes of that snapshot, whichever version other instances or a reload have
+ * stored since.
+ *
+ * <p>{@link #prune} deletes the versions of a category beyond the {@code
+ * fhir.mapper.terminology.postgres.retained-versions} most recently loaded ones, except those the
+ * active snapshot of the instance holds. Other instances are only covered by the retained count,
+ * so keep it above the number of versions of a list the instances run at once.
+ *
+ * <p>The display column carries a pg_trgm GIN index on its lower-cased value, and the rows are
+ * filtered by the indexed word similarity operator and ordered by similarity in SQL, so only the
+ * best rows leave the database. The filter threshold is the session's {@code
+ * pg_trgm.word_similarity_threshold}, which the profile sets from {@code
+ * fhir.mapper.terminology.trigram.min-similarity} on every connection. On other databases, ex: H2
+ * in PostgreSQL mode with {@code word_similarity} and {@code similarity} defined as functions, the
+ * filter compares the word similarity to that property instead.
+ */
+@Component
+public class PostgresTerminologySearch {
+  public static final String STORE = "postgres";
+  private static final Logger log = LoggerFactory.getLogger(PostgresTerminologySearch.class);
+  private static final int INSERT_BATCH_SIZE = 500;
+
+  @Autowired(required = false)
+  private JdbcTemplate jdbcTemplate;
+
+  @Value("${fhir.mapper.terminology.store:database}")
+  private String store;
+
+  @Value("${fhir.mapper.terminology.trigram.min-similarity:0.6}")
+  private double minSimilarity;
+
+  @Value("${fhir.mapper.terminology.postgres.retained-versions:3}")
+  private int retainedVersions;
+
+  private volatile boolean trigramOperators;
+
+  public boolean isEnabled() {
+    return STORE.equalsIgnoreCase(store) && jdbcTemplate != null;
+  }
+
+  /**
+   * Whether the fuzzy lookups of the category are ranked by the store. LOINC codes are matched
+   * within their wellness category by the in-memory index instead.
+   */
+  public boolean ranks(Class<?> type) {
+    return isEnabled() && type != LoincObservation.class;
+  }
+
+  /** Creates the version and concept tables, and on PostgreSQL their trigram index, if missing. */
+  public void createTables() {
+    if (!isEnabled()) {
+      return;
+    }
+    trigramOperators =
+        Boolean.TRUE.equals(
+            jdbcTemplate.execute(
+                (ConnectionCallback<Boolean>)
+                    connection ->
+                        "PostgreSQL".equals(connection.getMetaData().getDatabaseProductName())));
+    jdbcTemplate.execute(
+        "CREATE TABLE IF NOT EXISTS \"terminology_list\" (\"category\" varchar(64) NOT NULL,"
+            + " \"fingerprint\" varchar(64) NOT NULL, \"concepts\" integer NOT NULL,"
+            + " \"loaded_at\" timestamp NOT NULL, PRIMARY KEY (\"category\", \"fingerprint\"))");
+    jdbcTemplate.execute(
+        "CREATE TABLE IF NOT EXISTS \"terminology_concept\" (\"category\" varchar(64) NOT NULL,"
+            + " \"fingerprint\" varchar(64) NOT NULL, \"code\" varchar(255) NOT NULL,"
+            + " \"display\" varchar NOT NULL,"
+            + " PRIMARY KEY (\"category\", \"fingerprint\", \"code\"))");
+    if (trigramOperators) {
+      jdbcTemplate.execute("CREATE EXTENSION IF NOT EXISTS pg_trgm");
+      jdbcTemplate.execute(
+          "CREATE INDEX IF NOT EXISTS \"terminology_concept_display_trgm\""
+              + " ON \"terminology_concept\" USING gin (lower(\"display\") gin_trgm_ops)");
+    }
+    log.info("Terminology store ready, trigram index {}", trigramOperators ? "on" : "off");
+  }
+
+  /**
+   * Stores one version of the code list of a category, unless it is stored already, and records
+   * it as loaded now. Run it in a transaction: an instance storing the same version concurrently
+   * waits for it and then skips the list, and a failed store leaves nothing behind.
+   *
+   * @param fingerprint content hash of the list ex: TerminologyIndex.fingerprint()
+   * @return number of rows inserted, 0 when the version was already stored
+   */
+  public int store(Class<?> type, String fingerprint, List<? extends Displayable> concepts) {
+    int claimed =
+        jdbcTemplate.update(
+            "INSERT INTO \"terminology_list\" (\"category\", \"fingerprint\", \"concepts\","
+                + " \"loaded_at\") VALUES (?, ?, ?, CURRENT_TIMESTAMP) ON CONFLICT DO NOTHING",
+            type.getSimpleName(),
+            fingerprint,
+            concepts.size());
+    if (claimed == 0) {
+      jdbcTemplate.update(
+          "UPDATE \"terminology_list\" SET \"loaded_at\" = CURRENT_TIMESTAMP"
+              + " WHERE \"category\" = ? AND \"fingerprint\" = ?",
+          type.getSimpleName(),
+          fingerprint);
+      return 0;
+    }
+    jdbcTemplate.batchUpdate(
+        "INSERT INTO \"terminology_concept\" (\"category\", \"fingerprint\", \"code\", \"display\")"
+            + " VALUES (?, ?, ?, ?)",
+        concepts,
+        INSERT_BATCH_SIZE,
+        (statement, concept) -> {
+          statement.setString(1, type.getSimpleName());
+          statement.setString(2, fingerprint);
+          statement.setString(3, concept.getCode());
+          statement.setString(4, concept.getDisplay());
+        });
+    return concepts.size();
+  }
+
+  /**
+   * Deletes the versions of the code list of a category beyond the {@code retained-versions} most
+   * recently loaded ones, with their rows; 0 or less retains every version. Run it in a
+   * transaction, so an instance storing a deleted version again waits for the delete.
+   *
+   * @param pinned fingerprints of versions to keep anyway ex: of the active snapshot
+   * @return number of versions deleted
+   */
+  public int prune(Class<?> type, Collection<String> pinned) {
+    if (retainedVersions <= 0) {
+      return 0;
+    }
+    List<String> versions =
+        jdbcTemplate.queryForList(
+            "SELECT \"fingerprint\" FROM \"terminology_list\" WHERE \"category\" = ?"
+                + " ORDER BY \"loaded_at\" DESC, \"fingerprint\"",
+            String.class,
+            type.getSimpleName());
+    int deleted = 0;
+    for (int i = retainedVersions; i < versions.size(); i++) {
+      String fingerprint = versions.get(i);
+      if (pinned.contains(fingerprint)) {
+        continue;
+      }
+      jdbcTemplate.update(
+          "DELETE FROM \"terminology_list\" WHERE \"category\" = ? AND \"fingerprint\" = ?",
+          type.getSimpleName(),
+          fingerprint);
+      jdbcTemplate.update(
+          "DELETE FROM \"terminology_concept\" WHERE \"category\" = ? AND \"fingerprint\" = ?",
+          type.getSimpleName(),
+          fingerprint);
+      deleted++;
+    }
+    if (deleted > 0) {
+      log.info("Deleted {} stored versions of {}", deleted, type.getSimpleName());
+    }
+    return deleted;
+  }
+
+  /**
+   * Returns the {@code k} rows of one version of the code list of the category whose display best
+   * contains {@code normalized}, the lower-cased input, allowing misspellings: highest word
+   * similarity first, then the closest display overall, so "paracetamol" prefers "Paracetamol 500
+   * mg tablet" to longer products.
+   *
+   * @param fingerprint content hash of the list version to search ex: of the pinned snapshot
+   */
+  public List<MappedTerminologyIndex.Match> search(
+      Class<?> type, String fingerprint, String normalized, int k) {
+    String filter =
+        trigramOperators
+            ? "? <% lower(\"display\")"
+            : "word_similarity(?, lower(\"display\")) >= " + minSimilarity;
+    String sql =
+        "SELECT \"code\", \"display\", word_similarity(?, lower(\"display\")) AS score"
+            + " FROM \"terminology_concept\" WHERE \"category\" = ? AND \"fingerprint\" = ? AND "
+            + filter
+            + " ORDER BY score DESC, similarity(?, lower(\"display\")) DESC, \"code\" LIMIT ?";
+    return jdbcTemplate.query(
+        sql,
+        (row, rowNum) ->
+            new MappedTerminologyIndex.Match(
+                row.getString("code"), row.getString("display"), row.getDouble("score")),
+        normalized,
+        type.getSimpleName(),
+        fingerprint,
+        normalized,
+        normalized,
+        k);
+  }
+}
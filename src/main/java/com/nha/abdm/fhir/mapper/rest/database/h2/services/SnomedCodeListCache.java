@@ -0,0 +1,144 @@
+/* (C) 2024 */
+package com.nha.abdm.fhir.mapper.rest.database.h2.services;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.nha.abdm.fhir.mapper.rest.common.constants.SnomedCodeIdentifier;
+import com.nha.abdm.fhir.mapper.rest.database.h2.index.TerminologyIndex;
+import com.nha.abdm.fhir.mapper.rest.database.h2.index.TerminologyIndexRegistry;
+import com.nha.abdm.fhir.mapper.rest.database.h2.index.TerminologySnapshot;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.zip.GZIPOutputStream;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Serialized pages of the {@code /v1/snomed/{resource}} code lists. Each page is written once per
+ * terminology snapshot version, together with its gzip encoding and a strong ETag derived from the
+ * version and the fingerprint of the codes and displays of the category, and then served as stored
+ * bytes.
+ */
+@Component
+public class SnomedCodeListCache {
+  private static final Map<String, String> RESPONSE_FIELDS =
+      Map.of(
+          SnomedCodeIdentifier.SNOMED_CONDITION.toLowerCase(Locale.ROOT),
+          "snomedConditionProcedureCodes",
+          SnomedCodeIdentifier.SNOMED_PROCEDURE.toLowerCase(Locale.ROOT),
+          "snomedConditionProcedureCodes",
+          SnomedCodeIdentifier.SNOMED_DIAGNOSTICS.toLowerCase(Locale.ROOT),
+          "snomedDiagnosticCodes",
+          SnomedCodeIdentifier.SNOMED_ENCOUNTER.toLowerCase(Locale.ROOT),
+          "snomedEncounterCodes",
+          SnomedCodeIdentifier.SNOMED_MEDICATION_ROUTE.toLowerCase(Locale.ROOT),
+          "snomedMedicineRouteCodes",
+          SnomedCodeIdentifier.SNOMED_MEDICATIONS.toLowerCase(Locale.ROOT),
+          "snomedMedicineCodes",
+          SnomedCodeIdentifier.SNOMED_OBSERVATIONS.toLowerCase(Locale.ROOT),
+          "snomedObservationCodes",
+          SnomedCodeIdentifier.SNOMED_SPECIMEN.toLowerCase(Locale.ROOT),
+          "snomedSpecimenCodes",
+          SnomedCodeIdentifier.SNOMED_VACCINES.toLowerCase(Locale.ROOT),
+          "snomedVaccineCodes");
+
+  private final SnomedService snomedService;
+  private final TerminologyIndexRegistry terminologyIndexRegistry;
+  private final JsonFactory jsonFactory = new JsonFactory();
+  private final Cache<String, CodeListPage> pages;
+
+  /** A serialized page, as identity and gzip encoded bytes. */
+  public record CodeListPage(String etag, byte[] json, byte[] gzip) {}
+
+  public SnomedCodeListCache(
+      SnomedService snomedService,
+      TerminologyIndexRegistry terminologyIndexRegistry,
+      @Value("${fhir.mapper.terminology.code-list.max-pages:256}") long maxPages) {
+    this.snomedService = snomedService;
+    this.terminologyIndexRegistry = terminologyIndexRegistry;
+    this.pages = Caffeine.newBuilder().maximumSize(maxPages).build();
+  }
+
+  /**
+   * Returns a page of the code list of the resource, serializing it on first use in the current
+   * snapshot version.
+   *
+   * @param resource name of the resource ex: Medications
+   * @param offset index of the first concept of the page
+   * @param limit page size, the whole list when null
+   * @return the page, null for an unknown resource
+   */
+  public CodeListPage getPage(String resource, int offset, Integer limit) {
+    String field = RESPONSE_FIELDS.get(resource.toLowerCase(Locale.ROOT));
+    if (field == null) {
+      return null;
+    }
+    TerminologySnapshot snapshot = terminologyIndexRegistry.current();
+    TerminologyIndex<?> index = snapshot.get(snomedService.getCategory(resource));
+    String etag =
+        "\""
+            + snapshot.version().replaceAll("[^A-Za-z0-9._-]", "_")
+            + "-"
+            + (index == null ? "empty" : index.fingerprint())
+            + "-"
+            + field
+            + "-"
+            + offset
+            + "-"
+            + (limit == null ? "all" : limit)
+            + "\"";
+    return pages.get(etag, key -> serialize(key, resource, field, offset, limit));
+  }
+
+  /** Serialized pages are scoped by version, so this only frees memory after a reload. */
+  public void invalidate() {
+    pages.invalidateAll();
+  }
+
+  private CodeListPage serialize(
+      String etag, String resource, String field, int offset, Integer limit) {
+    List<? extends Displayable> concepts = snomedService.getSnomedConcepts(resource);
+    int from = Math.min(offset, concepts.size());
+    int to = limit == null ? concepts.size() : Math.min(concepts.size(), from + limit);
+
+    ByteArrayOutputStream json = new ByteArrayOutputStream();
+    try (JsonGenerator generator = jsonFactory.createGenerator(json)) {
+      generator.writeStartObject();
+      generator.writeStringField("message", "Retrieved");
+      generator.writeArrayFieldStart(field);
+      for (Displayable concept : concepts.subList(from, to)) {
+        generator.writeStartObject();
+        generator.writeStringField("code", concept.getCode());
+        generator.writeStringField("display", concept.getDisplay());
+        generator.writeEndObject();
+      }
+      generator.writeEndArray();
+      generator.writeNumberField("total", concepts.size());
+      if (limit != null) {
+        generator.writeNumberField("offset", from);
+        generator.writeNumberField("limit", limit);
+        if (to < concepts.size()) {
+          generator.writeNumberField("nextOffset", to);
+        }
+      }
+      generator.writeEndObject();
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return new CodeListPage(etag, json.toByteArray(), gzip(json.toByteArray()));
+  }
+
+  private static byte[] gzip(byte[] bytes) {
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4 + 64);
+    try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+      out.write(bytes);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return compressed.toByteArray();
+  }
+}
@@ -2,53 +2,76 @@
 package com.nha.abdm.fhir.mapper.rest.database.h2.services;
 
 import com.nha.abdm.fhir.mapper.rest.common.constants.BundleFieldIdentifier;
+import com.nha.abdm.fhir.mapper.rest.common.constants.BundleUrlIdentifier;
 import com.nha.abdm.fhir.mapper.rest.common.constants.SnomedCodeIdentifier;
 import com.nha.abdm.fhir.mapper.rest.common.helpers.SnomedResponse;
-import com.nha.abdm.fhir.mapper.rest.database.h2.repositories.*;
+import com.nha.abdm.fhir.mapper.rest.common.helpers.TerminologyMatchStats;
+import com.nha.abdm.fhir.mapper.rest.database.h2.index.LuceneTerminologyIndex;
+import com.nha.abdm.fhir.mapper.rest.database.h2.index.MappedTerminologyIndex;
+import com.nha.abdm.fhir.mapper.rest.database.h2.index.ScoredConcept;
+import com.nha.abdm.fhir.mapper.rest.database.h2.index.TerminologyIndex;
+import com.nha.abdm.fhir.mapper.rest.database.h2.index.TerminologyIndexRegistry;
+import com.nha.abdm.fhir.mapper.rest.database.h2.index.TerminologySnapshot;
 import com.nha.abdm.fhir.mapper.rest.database.h2.tables.*;
 import java.util.*;
-import java.util.stream.Collectors;
-import org.apache.commons.text.similarity.CosineSimilarity;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 @Service
 public class SnomedService {
-  @Autowired private final SnomedMedicineRepo snomedMedicineRepo;
-  @Autowired private final SnomedConditionProcedureRepo snomedConditionProcedureRepo;
-  @Autowired private final SnomedEncounterRepo snomedEncounterRepo;
-  @Autowired private final SnomedSpecimenRepo snomedSpecimenRepo;
-  @Autowired private final SnomedObservationRepo snomedObservationRepo;
-  @Autowired private final SnomedVaccineRepo snomedVaccineRepo;
-  @Autowired private final SnomedDiagnosticRepo snomedDiagnosticRepo;
-  @Autowired private final SnomedMedicineRouteRepo snomedMedicineRouteRepo;
+  private static final int CANDIDATE_LIMIT = 20;
+  private static final int RELEASE_SCAN_LIMIT = 200;
+  private static final int LOINC_CANDIDATE_LIMIT = 200;
+  private static final int EXTERNAL_HIT_LIMIT = 10;
+
+  @Autowired private final TerminologyIndexRegistry terminologyIndexRegistry;
+  @Autowired private final TerminologyCache terminologyCache;
+  @Autowired private final PostgresTerminologySearch postgresTerminologySearch;
+  private final double trigramMinSimilarity;
+  private final Map<Class<?>, LongAdder> exactHits = new ConcurrentHashMap<>();
+  private final Map<Class<?>, LongAdder> fuzzyLookups = new ConcurrentHashMap<>();
+  private final Map<Class<?>, LongAdder> codedHits = new ConcurrentHashMap<>();
+  private final Map<Class<?>, LongAdder> structuredHits = new ConcurrentHashMap<>();
+
+  private final Map<Class<?>, BiFunction<String, String, ?>> builders =
+      Map.of(
+          SnomedConditionProcedure.class,
+          (code, display) -> SnomedConditionProcedure.builder().code(code).display(display).build(),
+          SnomedDiagnostic.class,
+          (code, display) -> SnomedDiagnostic.builder().code(code).display(display).build(),
+          SnomedEncounter.class,
+          (code, display) -> SnomedEncounter.builder().code(code).display(display).build(),
+          SnomedMedicine.class,
+          (code, display) -> SnomedMedicine.builder().code(code).display(display).build(),
+          SnomedObservation.class,
+          (code, display) -> SnomedObservation.builder().code(code).display(display).build(),
+          SnomedSpecimen.class,
+          (code, display) -> SnomedSpecimen.builder().code(code).display(display).build(),
+          SnomedVaccine.class,
+          (code, display) -> SnomedVaccine.builder().code(code).display(display).build(),
+          SnomedMedicineRoute.class,
+          (code, display) -> SnomedMedicineRoute.builder().code(code).display(display).build(),
+          LoincObservation.class,
+          (code, display) -> LoincObservation.builder().code(code).display(display).build());
 
   public SnomedService(
-      SnomedMedicineRepo snomedMedicineRepo,
-      SnomedConditionProcedureRepo snomedConditionProcedureRepo,
-      SnomedEncounterRepo snomedEncounterRepo,
-      SnomedSpecimenRepo snomedSpecimenRepo,
-      SnomedObservationRepo snomedObservationRepo,
-      SnomedVaccineRepo snomedVaccineRepo,
-      SnomedDiagnosticRepo snomedDiagnosticRepo,
-      SnomedMedicineRouteRepo snomedMedicineRouteRepo) {
-    this.snomedMedicineRepo = snomedMedicineRepo;
-    this.snomedConditionProcedureRepo = snomedConditionProcedureRepo;
-    this.snomedEncounterRepo = snomedEncounterRepo;
-    this.snomedSpecimenRepo = snomedSpecimenRepo;
-    this.snomedObservationRepo = snomedObservationRepo;
-    this.snomedVaccineRepo = snomedVaccineRepo;
-    this.snomedDiagnosticRepo = snomedDiagnosticRepo;
-    this.snomedMedicineRouteRepo = snomedMedicineRouteRepo;
+      TerminologyIndexRegistry terminologyIndexRegistry,
+      TerminologyCache terminologyCache,
+      PostgresTerminologySearch postgresTerminologySearch,
+      @Value("${fhir.mapper.terminology.trigram.min-similarity:0.6}")
+          double trigramMinSimilarity) {
+    this.terminologyIndexRegistry = terminologyIndexRegistry;
+    this.terminologyCache = terminologyCache;
+    this.postgresTerminologySearch = postgresTerminologySearch;
+    this.trigramMinSimilarity = trigramMinSimilarity;
   }
 
   public SnomedConditionProcedure getConditionProcedureCode(String display) {
-    SnomedConditionProcedure snomedCode =
-        (SnomedConditionProcedure)
-            fuzzyMatch(
-                snomedConditionProcedureRepo.findByDisplay(display),
-                display,
-                SnomedConditionProcedure.class);
+    SnomedConditionProcedure snomedCode = resolve(SnomedConditionProcedure.class, display);
     return snomedCode == null
         ? SnomedConditionProcedure.builder()
             .code(SnomedCodeIdentifier.SNOMED_UNKNOWN)
@@ -58,14 +81,11 @@ public class SnomedService {
   }
 
   public List<SnomedConditionProcedure> getAllConditionProcedureCode() {
-    return snomedConditionProcedureRepo.findAll();
+    return concepts(SnomedConditionProcedure.class);
   }
 
   public SnomedDiagnostic getSnomedDiagnosticCode(String display) {
-    SnomedDiagnostic snomedCode =
-        (SnomedDiagnostic)
-            fuzzyMatch(
-                snomedDiagnosticRepo.findByDisplay(display), display, SnomedDiagnostic.class);
+    SnomedDiagnostic snomedCode = resolve(SnomedDiagnostic.class, display);
     return snomedCode != null
         ? snomedCode
         : SnomedDiagnostic.builder()
@@ -75,7 +95,7 @@ public class SnomedService {
   }
 
   public List<SnomedDiagnostic> getAllSnomedDiagnosticCode() {
-    return snomedDiagnosticRepo.findAll();
+    return concepts(SnomedDiagnostic.class);
   }
 
   public SnomedEncounter getSnomedEncounterCode(String display) {
@@ -85,9 +105,7 @@ public class SnomedService {
           .display(BundleFieldIdentifier.AMBULATORY)
           .build();
     }
-    SnomedEncounter snomedCode =
-        (SnomedEncounter)
-            fuzzyMatch(snomedEncounterRepo.findByDisplay(display), display, SnomedEncounter.class);
+    SnomedEncounter snomedCode = resolve(SnomedEncounter.class, display);
     return snomedCode != null
         ? snomedCode
         : SnomedEncounter.builder()
@@ -97,13 +115,11 @@ public class SnomedService {
   }
 
   public List<SnomedEncounter> getAllSnomedEncounterCode() {
-    return snomedEncounterRepo.findAll();
+    return concepts(SnomedEncounter.class);
   }
 
   public SnomedMedicine getSnomedMedicineCode(String display) {
-    SnomedMedicine snomedCode =
-        (SnomedMedicine)
-            fuzzyMatch(snomedMedicineRepo.findByDisplay(display), display, SnomedMedicine.class);
+    SnomedMedicine snomedCode = resolve(SnomedMedicine.class, display);
     return snomedCode != null
         ? snomedCode
         : SnomedMedicine.builder()
@@ -113,14 +129,11 @@ public class SnomedService {
   }
 
   public List<SnomedMedicine> getAllSnomedMedicineCode() {
-    return snomedMedicineRepo.findAll();
+    return concepts(SnomedMedicine.class);
   }
 
   public SnomedObservation getSnomedObservationCode(String display) {
-    SnomedObservation snomedObservation =
-        (SnomedObservation)
-            fuzzyMatch(
-                snomedObservationRepo.findByDisplay(display), display, SnomedObservation.class);
+    SnomedObservation snomedObservation = resolve(SnomedObservation.class, display);
     return snomedObservation != null
         ? snomedObservation
         : SnomedObservation.builder()
@@ -130,13 +143,42 @@ public class SnomedService {
   }
 
   public List<SnomedObservation> getAllSnomedObservationCode() {
-    return snomedObservationRepo.findAll();
+    return concepts(SnomedObservation.class);
+  }
+
+  /**
+   * Resolves a display against the LOINC codes of one category. An exact display is a single hash
+   * lookup; other terms are matched like the Snomed displays, among the codes of the category only.
+   *
+   * @param category wellness category ex: vitalSigns, or diagnosticLab for lab reports
+   * @param display free text term ex: Heart rate
+   * @return the LOINC code, null when the category has none matching
+   */
+  public LoincObservation getLoincObservationCode(String category, String display) {
+    if (display == null) {
+      return null;
+    }
+    TerminologySnapshot snapshot = terminologyIndexRegistry.current();
+    TerminologyIndex<LoincObservation> index = snapshot.get(LoincObservation.class);
+    if (index == null) {
+      return null;
+    }
+    String normalized = TerminologyCache.normalize(display);
+    LoincObservation exact = index.exactMatch(normalized);
+    if (exact != null && Objects.equals(category, exact.getCategory())) {
+      counter(exactHits, LoincObservation.class).increment();
+      return exact;
+    }
+    counter(fuzzyLookups, LoincObservation.class).increment();
+    return terminologyCache.get(
+        LoincObservation.class,
+        snapshot.version(),
+        category + '\n' + normalized,
+        key -> loincMatch(index, category, normalized));
   }
 
   public SnomedSpecimen getSnomedSpecimenCode(String display) {
-    SnomedSpecimen snomedCode =
-        (SnomedSpecimen)
-            fuzzyMatch(snomedSpecimenRepo.findByDisplay(display), display, SnomedSpecimen.class);
+    SnomedSpecimen snomedCode = resolve(SnomedSpecimen.class, display);
     return snomedCode != null
         ? snomedCode
         : SnomedSpecimen.builder()
@@ -146,13 +188,11 @@ public class SnomedService {
   }
 
   public List<SnomedSpecimen> getAllSnomedSpecimenCode() {
-    return snomedSpecimenRepo.findAll();
+    return concepts(SnomedSpecimen.class);
   }
 
   public SnomedVaccine getSnomedVaccineCode(String display) {
-    SnomedVaccine snomedCode =
-        (SnomedVaccine)
-            fuzzyMatch(snomedVaccineRepo.findByDisplay(display), display, SnomedVaccine.class);
+    SnomedVaccine snomedCode = resolve(SnomedVaccine.class, display);
     return snomedCode != null
         ? snomedCode
         : SnomedVaccine.builder()
@@ -162,14 +202,11 @@ public class SnomedService {
   }
 
   public List<SnomedVaccine> getAllSnomedVaccineCode() {
-    return snomedVaccineRepo.findAll();
+    return concepts(SnomedVaccine.class);
   }
 
   public SnomedMedicineRoute getSnomedMedicineRouteCode(String display) {
-    SnomedMedicineRoute snomedCode =
-        (SnomedMedicineRoute)
-            fuzzyMatch(
-                snomedMedicineRouteRepo.findByDisplay(display), display, SnomedMedicineRoute.class);
+    SnomedMedicineRoute snomedCode = resolve(SnomedMedicineRoute.class, display);
     return snomedCode != null
         ? snomedCode
         : SnomedMedicineRoute.builder()
@@ -179,7 +216,7 @@ public class SnomedService {
   }
 
   public List<SnomedMedicineRoute> getAllSnomedMedicineRouteCode() {
-    return snomedMedicineRouteRepo.findAll();
+    return concepts(SnomedMedicineRoute.class);
   }
 
   public SnomedResponse getSnomedCodes(String resource) {
@@ -215,56 +252,439 @@ public class SnomedService {
     return null;
   }
 
-  private static boolean hasValidWordDifference(String input, String display) {
-    if (input == null || display == null) return false;
-    int inputWordCount = countWords(input);
-    int displayWordCount = countWords(display);
+  /**
+   * Concepts listed for a resource by {@link #getSnomedCodes(String)}.
+   *
+   * @param resource name of the resource ex: Medications
+   * @return concepts of the resource, null for an unknown resource
+   */
+  public List<? extends Displayable> getSnomedConcepts(String resource) {
+    Class<? extends Displayable> category = getCategory(resource);
+    return category == null ? null : concepts(category);
+  }
+
+  /**
+   * Ranks the concepts of a resource for as-you-type search. Every word of the query but the last
+   * is a word of the display and the last one starts a word of it, and concepts are ordered by the
+   * cosine similarity used for display lookups, with the partially typed word counted as the word
+   * it completes.
+   *
+   * @param resource name of the resource ex: Medications
+   * @param query text typed so far
+   * @param limit maximum number of results
+   * @return best matches first, null for an unknown resource
+   */
+  public List<? extends ScoredConcept<? extends Displayable>> search(
+      String resource, String query, int limit) {
+    Class<? extends Displayable> category = getCategory(resource);
+    if (category == null) {
+      return null;
+    }
+    TerminologyIndex<? extends Displayable> index = terminologyIndexRegistry.get(category);
+    return index == null ? new ArrayList<>() : index.search(query, limit);
+  }
+
+  /** Category entity of a resource name ex: SnomedMedicine for Medications, null if unknown. */
+  public Class<? extends Displayable> getCategory(String resource) {
+    if (resource.equalsIgnoreCase(SnomedCodeIdentifier.SNOMED_CONDITION)
+        || resource.equalsIgnoreCase(SnomedCodeIdentifier.SNOMED_PROCEDURE)) {
+      return SnomedConditionProcedure.class;
+    }
+    if (resource.equalsIgnoreCase(SnomedCodeIdentifier.SNOMED_DIAGNOSTICS)) {
+      return SnomedDiagnostic.class;
+    }
+    if (resource.equalsIgnoreCase(SnomedCodeIdentifier.SNOMED_ENCOUNTER)) {
+      return SnomedEncounter.class;
+    }
+    if (resource.equalsIgnoreCase(SnomedCodeIdentifier.SNOMED_MEDICATION_ROUTE)) {
+      return SnomedMedicineRoute.class;
+    }
+    if (resource.equalsIgnoreCase(SnomedCodeIdentifier.SNOMED_MEDICATIONS)) {
+      return SnomedMedicine.class;
+    }
+    if (resource.equalsIgnoreCase(SnomedCodeIdentifier.SNOMED_OBSERVATIONS)) {
+      return SnomedObservation.class;
+    }
+    if (resource.equalsIgnoreCase(SnomedCodeIdentifier.SNOMED_SPECIMEN)) {
+      return SnomedSpecimen.class;
+    }
+    if (resource.equalsIgnoreCase(SnomedCodeIdentifier.SNOMED_VACCINES)) {
+      return SnomedVaccine.class;
+    }
+    return null;
+  }
+
+  /**
+   * Resolves a batch of displays of one category. Inputs are de-duplicated on their normalized
+   * form, cached resolutions are reused and the remaining ones are matched against the index
+   * together, with one scan of its vocabulary for all of them.
+   *
+   * @param type the Snomed category ex: SnomedMedicine.class
+   * @param displays free text terms, null entries are ignored
+   * @return concept per input display, with the same unknown fallback as the single lookups
+   */
+  public <T extends Displayable> Map<String, T> resolveAll(
+      Class<T> type, Collection<String> displays) {
+    Map<String, String> keys = new LinkedHashMap<>();
+    for (String display : displays) {
+      if (display != null) {
+        keys.putIfAbsent(display, TerminologyCache.normalize(display));
+      }
+    }
+    TerminologySnapshot snapshot = terminologyIndexRegistry.current();
+    TerminologyIndex<T> index = snapshot.get(type);
+    Map<String, T> matches = new HashMap<>();
+    Set<String> inexact = new LinkedHashSet<>();
+    for (String key : new LinkedHashSet<>(keys.values())) {
+      T exact = index == null ? null : index.exactMatch(key);
+      if (exact != null) {
+        matches.put(key, exact);
+      } else {
+        inexact.add(key);
+      }
+    }
+    counter(exactHits, type).add(matches.size());
+    counter(fuzzyLookups, type).add(inexact.size());
+    if (!inexact.isEmpty()) {
+      matches.putAll(
+          terminologyCache.getAll(
+              type, snapshot.version(), inexact, missing -> bestMatches(snapshot, type, missing)));
+    }
+
+    Map<String, T> resolved = new LinkedHashMap<>();
+    keys.forEach(
+        (display, key) -> {
+          T match = matches.get(key);
+          resolved.put(display, match != null ? match : unknown(type, display));
+        });
+    return resolved;
+  }
+
+  /** Fallback concept of an unresolved display, as returned by the single lookups. */
+  @SuppressWarnings("unchecked")
+  private <T extends Displayable> T unknown(Class<T> type, String display) {
+    String code =
+        type == SnomedEncounter.class
+            ? SnomedCodeIdentifier.SNOMED_ENCOUNTER_AMBULATORY
+            : SnomedCodeIdentifier.SNOMED_UNKNOWN;
+    return (T) builders.get(type).apply(code, display);
+  }
+
+  /**
+   * Validates a code supplied by the client against the category, without resolving any display.
+   *
+   * @param type the category ex: SnomedMedicine.class, or LoincObservation.class for LOINC codes
+   * @param code the code to look up, may be null
+   * @param system code system of the code, the one of the category when null
+   * @return the concept of the code, or null when the code is absent or not in the category
+   * @throws IllegalArgumentException when the system is not the one of the category ex: a LOINC
+   *     code for a Snomed category
+   */
+  public <T extends Displayable> T getByCode(Class<T> type, String code, String system) {
+    String categorySystem =
+        type == LoincObservation.class
+            ? BundleUrlIdentifier.LOINC_URL
+            : BundleUrlIdentifier.SNOMED_URL;
+    if (system != null && !categorySystem.equals(system)) {
+      throw new IllegalArgumentException(
+          "Code system "
+              + system
+              + " is not supported for "
+              + type.getSimpleName()
+              + ", expected "
+              + categorySystem);
+    }
+    if (code == null || code.isBlank()) {
+      return null;
+    }
+    TerminologyIndex<T> index = terminologyIndexRegistry.current().get(type);
+    T concept = index == null ? null : index.findByCode(code.trim());
+    if (concept != null) {
+      counter(codedHits, type).increment();
+    }
+    return concept;
+  }
+
+  /**
+   * Looks a batch of codes up in the code index of the category, all against one terminology
+   * snapshot.
+   *
+   * @param type the Snomed category ex: SnomedMedicine.class
+   * @param codes codes to look up, null entries are ignored
+   * @return concept per distinct code in input order, null for codes not in the category
+   */
+  public <T extends Displayable> Map<String, T> findByCodes(
+      Class<T> type, Collection<String> codes) {
+    TerminologyIndex<T> index = terminologyIndexRegistry.current().get(type);
+    Map<String, T> concepts = new LinkedHashMap<>();
+    for (String code : codes) {
+      if (code != null && !concepts.containsKey(code)) {
+        concepts.put(code, index == null ? null : index.findByCode(code.trim()));
+      }
+    }
+    return concepts;
+  }
+
+  /**
+   * {@link #findByCodes(Class, Collection)} for a resource name ex: Medications.
+   *
+   * @return concept per distinct code, null for invalid codes, or null for an unknown resource
+   */
+  public Map<String, ? extends Displayable> validateCodes(
+      String resource, Collection<String> codes) {
+    Class<? extends Displayable> category = getCategory(resource);
+    return category == null ? null : findByCodes(category, codes);
+  }
+
+  /**
+   * Returns, per category, how many lookups were answered by a client supplied code, by an exact
+   * display match and how many fell back to the cache and fuzzy matching, of which how many cache
+   * misses the medication index resolved to a product.
+   */
+  public List<TerminologyMatchStats> getMatchStats() {
+    Set<Class<?>> types = new HashSet<>(exactHits.keySet());
+    types.addAll(fuzzyLookups.keySet());
+    types.addAll(codedHits.keySet());
+    types.addAll(structuredHits.keySet());
+    List<TerminologyMatchStats> stats = new ArrayList<>();
+    types.forEach(
+        type -> {
+          long exact = counter(exactHits, type).sum();
+          long fuzzy = counter(fuzzyLookups, type).sum();
+          stats.add(
+              TerminologyMatchStats.builder()
+                  .category(type.getSimpleName())
+                  .codedHits(counter(codedHits, type).sum())
+                  .exactHits(exact)
+                  .fuzzyLookups(fuzzy)
+                  .structuredHits(counter(structuredHits, type).sum())
+                  .exactHitRate(exact + fuzzy == 0 ? 0.0 : (double) exact / (exact + fuzzy))
+                  .build());
+        });
+    stats.sort(Comparator.comparing(TerminologyMatchStats::getCategory));
+    return stats;
+  }
+
+  /**
+   * Indexed concept of the category for a code and display, ex: restored from a persisted
+   * resolution.
+   *
+   * @return the concept, null when the index no longer has the code or lists it with another
+   *     display
+   */
+  public <T extends Displayable> T toConcept(Class<T> type, String code, String display) {
+    TerminologyIndex<T> index = terminologyIndexRegistry.get(type);
+    T indexed = index == null ? null : index.findByCode(code);
+    return indexed != null && Objects.equals(indexed.getDisplay(), display) ? indexed : null;
+  }
+
+  /** Category entity of an entity name ex: SnomedMedicine, null if unknown. */
+  public Class<? extends Displayable> getCategoryByName(String entityName) {
+    for (Class<?> type : builders.keySet()) {
+      if (type.getSimpleName().equals(entityName)) {
+        return type.asSubclass(Displayable.class);
+      }
+    }
+    return null;
+  }
+
+  /** Every concept of the category, served from the in-memory index. */
+  private <T extends Displayable> List<T> concepts(Class<T> type) {
+    TerminologyIndex<T> index = terminologyIndexRegistry.get(type);
+    return index == null ? new ArrayList<>() : index.getDistinctConcepts();
+  }
 
-    return inputWordCount >= 1 && displayWordCount <= inputWordCount + 2;
+  private <T extends Displayable> T resolve(Class<T> type, String display) {
+    if (display == null) {
+      return null;
+    }
+    TerminologySnapshot snapshot = terminologyIndexRegistry.current();
+    String normalized = TerminologyCache.normalize(display);
+    TerminologyIndex<T> index = snapshot.get(type);
+    T exact = index == null ? null : index.exactMatch(normalized);
+    if (exact != null) {
+      counter(exactHits, type).increment();
+      return exact;
+    }
+    counter(fuzzyLookups, type).increment();
+    return terminologyCache.get(
+        type, snapshot.version(), normalized, key -> bestMatch(snapshot, type, key));
   }
 
-  // Count words in a string
-  private static int countWords(String text) {
-    if (text == null || text.trim().isEmpty()) return 0;
-    return text.trim().split("\\s+").length;
+  private static LongAdder counter(Map<Class<?>, LongAdder> counters, Class<?> type) {
+    return counters.computeIfAbsent(type, key -> new LongAdder());
   }
 
-  private static Map<CharSequence, Integer> createFrequencyMap(String text) {
-    String[] tokens = text.toLowerCase().split("\\s+");
-    Map<CharSequence, Integer> frequencyMap = new HashMap<>();
+  private <T extends Displayable> T bestMatch(
+      TerminologySnapshot snapshot, Class<T> type, String display) {
+    TerminologyIndex<T> index = snapshot.get(type);
+    T product = index == null ? null : index.medicationMatch(display);
+    if (product != null) {
+      counter(structuredHits, type).increment();
+      return product;
+    }
+    LuceneTerminologyIndex lucene = terminologyIndexRegistry.getLucene(snapshot);
+    if (lucene != null) {
+      T match = luceneMatch(lucene, index, type, display);
+      return match != null ? match : releaseMatch(type, display);
+    }
+    if (postgresTerminologySearch.ranks(type)) {
+      T match = postgresMatch(index, type, display);
+      return match != null ? match : releaseMatch(type, display);
+    }
+    if (index == null) {
+      return releaseMatch(type, display);
+    }
+    T match = index.bestMatch(display, CANDIDATE_LIMIT);
+    return match != null ? match : correctedMatch(index, type, display);
+  }
 
-    for (String token : tokens) {
-      frequencyMap.put(token, frequencyMap.getOrDefault(token, 0) + 1);
+  /**
+   * Match of a display the index has no cosine match for: the cosine match of its spelling
+   * correction, phonetic respelling or trigram repaired words, else the imported release. Input
+   * whose words are all known but have no match resolves to none, rather than to a concept that
+   * merely looks alike, ex: "pain abdomen" to "Resuture of burst abdomen".
+   */
+  private <T extends Displayable> T correctedMatch(
+      TerminologyIndex<T> index, Class<T> type, String display) {
+    T match = null;
+    String corrected = index.correctSpelling(display);
+    if (corrected != null) {
+      match = index.bestMatch(corrected, CANDIDATE_LIMIT);
     }
-    return frequencyMap;
+    if (match == null) {
+      String respelled = index.respellPhonetically(display);
+      if (respelled != null && !respelled.equals(corrected)) {
+        match = index.bestMatch(respelled, CANDIDATE_LIMIT);
+      }
+    }
+    if (match == null) {
+      String repaired =
+          index.repairWords(corrected != null ? corrected : display, trigramMinSimilarity);
+      if (repaired != null) {
+        match = index.bestMatch(repaired, CANDIDATE_LIMIT);
+      }
+    }
+    return match != null ? match : releaseMatch(type, display);
   }
 
-  public static <T extends Displayable> Object fuzzyMatch(
-      List<T> list, String input, Class<T> type) {
-    CosineSimilarity cosineSimilarity = new CosineSimilarity();
+  /**
+   * Best match in the Lucene index, which does its own fuzzy and prefix matching, among the hits
+   * the snapshot index still lists with the same display.
+   */
+  private <T extends Displayable> T luceneMatch(
+      LuceneTerminologyIndex lucene, TerminologyIndex<T> index, Class<T> type, String display) {
+    return indexed(index, lucene.search(type.getSimpleName(), display, EXTERNAL_HIT_LIMIT));
+  }
 
-    Map<Object, Double> scoreMap =
-        list.stream()
-            .filter(type::isInstance)
-            .map(type::cast)
-            .filter(
-                obj ->
-                    hasValidWordDifference(
-                        input,
-                        obj.getDisplay())) // filtering the difference in words not more the input
-            // +=2
-            .collect(
-                Collectors.toMap(
-                    obj -> obj,
-                    obj -> {
-                      Map<CharSequence, Integer> inputMap = createFrequencyMap(input);
-                      Map<CharSequence, Integer> displayMap = createFrequencyMap(obj.getDisplay());
-                      return cosineSimilarity.cosineSimilarity(inputMap, displayMap);
-                    }));
+  /**
+   * First of the ranked hits of an external index whose code the snapshot index has, with the same
+   * display; hits of codes removed or relabelled since that index was written are skipped.
+   */
+  private static <T extends Displayable> T indexed(
+      TerminologyIndex<T> index, List<MappedTerminologyIndex.Match> matches) {
+    if (index == null) {
+      return null;
+    }
+    for (MappedTerminologyIndex.Match match : matches) {
+      T concept = index.findByCode(match.code());
+      if (concept != null && Objects.equals(concept.getDisplay(), match.display())) {
+        return concept;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Best match ranked by the shared PostgreSQL store, among the rows of the version of the code
+   * list the snapshot index was built from. Runs on a lookup cache miss only, so a repeated term
+   * costs one query per instance and terminology version.
+   */
+  private <T extends Displayable> T postgresMatch(
+      TerminologyIndex<T> index, Class<T> type, String display) {
+    if (index == null) {
+      return null;
+    }
+    return indexed(index, postgresTerminologySearch.search(type, index.fingerprint(), display, 1));
+  }
+
+  /**
+   * Best cosine match of the category among the substring candidates of the input, of its spelling
+   * correction or of its trigram repaired words.
+   */
+  private LoincObservation loincMatch(
+      TerminologyIndex<LoincObservation> index, String category, String display) {
+    LoincObservation match = inCategory(index, category, display);
+    String corrected = match == null ? index.correctSpelling(display) : null;
+    if (corrected != null) {
+      match = inCategory(index, category, corrected);
+    }
+    String repaired =
+        match == null
+            ? index.repairWords(corrected != null ? corrected : display, trigramMinSimilarity)
+            : null;
+    if (repaired != null) {
+      match = inCategory(index, category, repaired);
+    }
+    return match;
+  }
 
-    return scoreMap.entrySet().stream()
-        .max(Map.Entry.comparingByValue())
-        .map(Map.Entry::getKey)
-        .orElse(null);
+  private static LoincObservation inCategory(
+      TerminologyIndex<LoincObservation> index, String category, String display) {
+    int[] candidates = index.candidates(display, LOINC_CANDIDATE_LIMIT);
+    return first(index.topMatches(display, candidates, candidates.length), category);
+  }
+
+  private static LoincObservation first(
+      List<ScoredConcept<LoincObservation>> matches, String category) {
+    for (ScoredConcept<LoincObservation> match : matches) {
+      if (Objects.equals(category, match.concept().getCategory())) {
+        return match.concept();
+      }
+    }
+    return null;
+  }
+
+  /** Best match in the imported release, for terms the bundled code list does not cover. */
+  @SuppressWarnings("unchecked")
+  private <T extends Displayable> T releaseMatch(Class<T> type, String display) {
+    MappedTerminologyIndex index = terminologyIndexRegistry.getRelease(type);
+    if (index == null) {
+      return null;
+    }
+    List<MappedTerminologyIndex.Match> matches = index.search(display, RELEASE_SCAN_LIMIT, 1);
+    return matches.isEmpty()
+        ? null
+        : (T) builders.get(type).apply(matches.get(0).code(), matches.get(0).display());
+  }
+
+  private <T extends Displayable> Map<String, T> bestMatches(
+      TerminologySnapshot snapshot, Class<T> type, List<String> displays) {
+    Map<String, T> matches = new HashMap<>();
+    TerminologyIndex<T> index = snapshot.get(type);
+    if (index == null
+        || terminologyIndexRegistry.getLucene(snapshot) != null
+        || postgresTerminologySearch.ranks(type)) {
+      for (String display : displays) {
+        matches.put(display, bestMatch(snapshot, type, display));
+      }
+      return matches;
+    }
+    List<String> unmatched = new ArrayList<>();
+    for (String display : displays) {
+      T product = index.medicationMatch(display);
+      if (product != null) {
+        counter(structuredHits, type).increment();
+        matches.put(display, product);
+      } else {
+        unmatched.add(display);
+      }
+    }
+    Map<String, T> cosine = index.bestMatches(unmatched, CANDIDATE_LIMIT);
+    for (String display : unmatched) {
+      T match = cosine.get(display);
+      matches.put(display, match != null ? match : correctedMatch(index, type, display));
+    }
+    return matches;
   }
 }
@@ -0,0 +1,264 @@
+/* (C) 2024 */
+package com.nha.abdm.fhir.mapper.rest.database.h2.services;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.nha.abdm.fhir.mapper.rest.common.helpers.TerminologyCacheStats;
+import com.nha.abdm.fhir.mapper.rest.common.helpers.TerminologyCoalescedLookup;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Per category, size bounded cache of display to concept resolutions, keyed on the normalized
+ * display. Misses are cached as well so that unknown terms do not get re-scored on every request.
+ * Eviction is Caffeine's frequency aware W-TinyLFU policy.
+ *
+ * <p>Entries are scoped to the terminology snapshot version they were resolved against, so a
+ * request still running on an older snapshot never serves or overwrites a newer resolution.
+ *
+ * <p>Concurrent misses on the same key are coalesced: the first caller resolves it and the others
+ * wait for its result instead of resolving it again. The waiters are counted per category and, for
+ * the most recently coalesced keys, per key. Whatever the resolver throws, Errors included, is
+ * handed to the waiters as well, so none of them is left blocked on a failed resolution.
+ */
+@Component
+public class TerminologyCache {
+  private static final int MAX_TRACKED_KEYS = 1000;
+
+  private final Map<Class<?>, Cache<String, Optional<Object>>> caches = new ConcurrentHashMap<>();
+  private final Map<Class<?>, Map<String, CompletableFuture<Optional<Object>>>> inFlight =
+      new ConcurrentHashMap<>();
+  private final Map<Class<?>, LongAdder> waiters = new ConcurrentHashMap<>();
+  private final Cache<String, LongAdder> waitersByKey =
+      Caffeine.newBuilder().maximumSize(MAX_TRACKED_KEYS).build();
+  private final long maxSize;
+  private final Duration ttl;
+
+  public TerminologyCache(
+      @Value("${fhir.mapper.terminology.cache.max-size:10000}") long maxSize,
+      @Value("${fhir.mapper.terminology.cache.ttl-minutes:60}") long ttlMinutes) {
+    this.maxSize = maxSize;
+    this.ttl = Duration.ofMinutes(ttlMinutes);
+  }
+
+  /** Lower-cases and collapses whitespace so that trivially different inputs share an entry. */
+  public static String normalize(String display) {
+    return String.join(" ", display.trim().toLowerCase(Locale.ROOT).split("\\s+"));
+  }
+
+  /**
+   * Returns the cached resolution of the normalized {@code key} in the given snapshot version,
+   * computing it with {@code resolver} on a miss, or waiting for the caller already computing it.
+   * A null resolution is cached and returned as null.
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T get(Class<T> type, String version, String key, Function<String, T> resolver) {
+    Cache<String, Optional<Object>> cache = cacheFor(type);
+    String versionedKey = versioned(version, key);
+    Optional<Object> cached = cache.getIfPresent(versionedKey);
+    if (cached != null) {
+      return (T) cached.orElse(null);
+    }
+    Map<String, CompletableFuture<Optional<Object>>> pending = inFlightFor(type);
+    CompletableFuture<Optional<Object>> flight = new CompletableFuture<>();
+    CompletableFuture<Optional<Object>> running = pending.putIfAbsent(versionedKey, flight);
+    if (running != null) {
+      return (T) await(type, key, running).orElse(null);
+    }
+    try {
+      Optional<Object> resolution = Optional.ofNullable(resolver.apply(key));
+      cache.put(versionedKey, resolution);
+      flight.complete(resolution);
+      return (T) resolution.orElse(null);
+    } catch (Throwable e) {
+      flight.completeExceptionally(e);
+      throw e;
+    } finally {
+      pending.remove(versionedKey, flight);
+    }
+  }
+
+  /**
+   * Bulk variant of {@link #get(Class, String, String, Function)}: keys missing from the cache are
+   * handed to {@code resolver} in one call, and keys it has no concept for are cached as misses.
+   *
+   * @return resolution per key, null for misses
+   */
+  @SuppressWarnings("unchecked")
+  public <T> Map<String, T> getAll(
+      Class<T> type,
+      String version,
+      Set<String> keys,
+      Function<List<String>, Map<String, T>> resolver) {
+    Cache<String, Optional<Object>> cache = cacheFor(type);
+    Map<String, CompletableFuture<Optional<Object>>> pending = inFlightFor(type);
+    Map<String, T> results = new HashMap<>();
+    Map<String, CompletableFuture<Optional<Object>>> owned = new LinkedHashMap<>();
+    Map<String, CompletableFuture<Optional<Object>>> running = new HashMap<>();
+    for (String key : keys) {
+      String versionedKey = versioned(version, key);
+      Optional<Object> cached = cache.getIfPresent(versionedKey);
+      if (cached != null) {
+        results.put(key, (T) cached.orElse(null));
+        continue;
+      }
+      CompletableFuture<Optional<Object>> flight = new CompletableFuture<>();
+      CompletableFuture<Optional<Object>> other = pending.putIfAbsent(versionedKey, flight);
+      if (other == null) {
+        owned.put(key, flight);
+      } else {
+        running.put(key, other);
+      }
+    }
+    if (!owned.isEmpty()) {
+      try {
+        Map<String, T> resolved = resolver.apply(new ArrayList<>(owned.keySet()));
+        owned.forEach(
+            (key, flight) -> {
+              Optional<Object> resolution = Optional.ofNullable(resolved.get(key));
+              cache.put(versioned(version, key), resolution);
+              flight.complete(resolution);
+              results.put(key, (T) resolution.orElse(null));
+            });
+      } catch (Throwable e) {
+        owned.values().forEach(flight -> flight.completeExceptionally(e));
+        throw e;
+      } finally {
+        owned.forEach((key, flight) -> pending.remove(versioned(version, key), flight));
+      }
+    }
+    running.forEach((key, flight) -> results.put(key, (T) await(type, key, flight).orElse(null)));
+    return results;
+  }
+
+  /**
+   * Keys whose concurrent lookups were coalesced the most, among the recently coalesced ones.
+   *
+   * @return up to {@code limit} keys, most waiters first
+   */
+  public List<TerminologyCoalescedLookup> getCoalescedLookups(int limit) {
+    return waitersByKey.asMap().entrySet().stream()
+        .map(
+            entry -> {
+              int separator = entry.getKey().indexOf('\n');
+              return TerminologyCoalescedLookup.builder()
+                  .category(entry.getKey().substring(0, separator))
+                  .key(entry.getKey().substring(separator + 1))
+                  .waiters(entry.getValue().sum())
+                  .build();
+            })
+        .sorted(Comparator.comparingLong(TerminologyCoalescedLookup::getWaiters).reversed())
+        .limit(limit)
+        .toList();
+  }
+
+  public List<TerminologyCacheStats> getStats() {
+    List<TerminologyCacheStats> stats = new ArrayList<>();
+    caches.forEach(
+        (type, cache) -> {
+          CacheStats cacheStats = cache.stats();
+          stats.add(
+              TerminologyCacheStats.builder()
+                  .category(type.getSimpleName())
+                  .size(cache.estimatedSize())
+                  .maxSize(maxSize)
+                  .hits(cacheStats.hitCount())
+                  .misses(cacheStats.missCount())
+                  .evictions(cacheStats.evictionCount())
+                  .hitRate(cacheStats.hitRate())
+                  .coalesced(waiters.getOrDefault(type, new LongAdder()).sum())
+                  .build());
+        });
+    stats.sort(Comparator.comparing(TerminologyCacheStats::getCategory));
+    return stats;
+  }
+
+  /**
+   * Resolutions cached for the given snapshot version, per category and normalized key; misses
+   * are present with a null value.
+   */
+  public Map<Class<?>, Map<String, Object>> getEntries(String version) {
+    String prefix = versioned(version, "");
+    Map<Class<?>, Map<String, Object>> entries = new HashMap<>();
+    caches.forEach(
+        (type, cache) -> {
+          Map<String, Object> resolutions = new HashMap<>();
+          cache
+              .asMap()
+              .forEach(
+                  (versionedKey, resolution) -> {
+                    if (versionedKey.startsWith(prefix)) {
+                      resolutions.put(
+                          versionedKey.substring(prefix.length()), resolution.orElse(null));
+                    }
+                  });
+          if (!resolutions.isEmpty()) {
+            entries.put(type, resolutions);
+          }
+        });
+    return entries;
+  }
+
+  /**
+   * Seeds the cache of a category with resolutions made against the given snapshot version, ex:
+   * restored from disk. Keys already cached keep their entry; null values are cached as misses.
+   */
+  public void preload(Class<?> type, String version, Map<String, ?> resolutions) {
+    Map<String, Optional<Object>> cache = cacheFor(type).asMap();
+    resolutions.forEach(
+        (key, resolution) ->
+            cache.putIfAbsent(versioned(version, key), Optional.ofNullable(resolution)));
+  }
+
+  /** Flushes the cache of the given category, or of every category when it is null. */
+  public void invalidate(String category) {
+    caches.forEach(
+        (type, cache) -> {
+          if (category == null || type.getSimpleName().equalsIgnoreCase(category)) {
+            cache.invalidateAll();
+          }
+        });
+  }
+
+  /** Waits for the resolution of a key another caller is computing, and counts the wait. */
+  private Optional<Object> await(
+      Class<?> type, String key, CompletableFuture<Optional<Object>> flight) {
+    waiters.computeIfAbsent(type, ignored -> new LongAdder()).increment();
+    waitersByKey.get(type.getSimpleName() + '\n' + key, ignored -> new LongAdder()).increment();
+    try {
+      return flight.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof Error error) {
+        throw error;
+      }
+      throw e.getCause() instanceof RuntimeException cause ? cause : e;
+    }
+  }
+
+  private Map<String, CompletableFuture<Optional<Object>>> inFlightFor(Class<?> type) {
+    return inFlight.computeIfAbsent(type, key -> new ConcurrentHashMap<>());
+  }
+
+  private static String versioned(String version, String key) {
+    return version + '\n' + key;
+  }
+
+  private Cache<String, Optional<Object>> cacheFor(Class<?> type) {
+    return caches.computeIfAbsent(
+        type,
+        key ->
+            Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build());
+  }
+}
@@ -0,0 +1,193 @@
+/* (C) 2024 */
+package com.nha.abdm.fhir.mapper.rest.database.h2.services;
+
+import com.nha.abdm.fhir.mapper.rest.database.h2.index.TerminologyIndexRegistry;
+import com.nha.abdm.fhir.mapper.rest.database.h2.index.TerminologySnapshot;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Persists the resolutions of the lookup cache to a local file at a fixed interval and on
+ * shutdown, and restores them once the terminology is loaded, so that a restarted instance starts
+ * with the popular terms already resolved.
+ *
+ * <p>The file is a gzipped stream of the snapshot version, a fingerprint of the loaded categories
+ * and, per category, the normalized inputs with the code and display they resolved to. It is
+ * restored in one sequential read, and discarded when the version or the fingerprint, a hash of
+ * every code and display, differs from the loaded terminology, ex: after a reload or a new code
+ * list. A resolution whose code the loaded index does not list with the same display is dropped and
+ * resolved again on its next lookup.
+ */
+@Component
+public class TerminologyWarmCache {
+  private static final Logger log = LoggerFactory.getLogger(TerminologyWarmCache.class);
+  private static final int MAGIC = 0x54574331;
+  private static final int MAX_KEY_LENGTH = 1024;
+
+  @Autowired TerminologyCache terminologyCache;
+  @Autowired TerminologyIndexRegistry terminologyIndexRegistry;
+  @Autowired SnomedService snomedService;
+
+  @Value("${fhir.mapper.terminology.warm-cache.file:}")
+  private String file;
+
+  @Value("${fhir.mapper.terminology.warm-cache.interval-minutes:5}")
+  private long intervalMinutes;
+
+  private ScheduledExecutorService scheduler;
+
+  @PostConstruct
+  public void scheduleSaves() {
+    if (file.isBlank() || intervalMinutes <= 0) {
+      return;
+    }
+    scheduler =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "terminology-warm-cache");
+              thread.setDaemon(true);
+              return thread;
+            });
+    scheduler.scheduleWithFixedDelay(
+        this::save, intervalMinutes, intervalMinutes, TimeUnit.MINUTES);
+  }
+
+  @PreDestroy
+  public void saveOnShutdown() {
+    if (scheduler != null) {
+      scheduler.shutdownNow();
+    }
+    save();
+  }
+
+  /**
+   * Restores the persisted resolutions into the lookup cache when they were made against the
+   * loaded terminology. Called once every category is loaded.
+   *
+   * @return number of restored resolutions
+   */
+  public int load() {
+    if (file.isBlank() || !Files.isRegularFile(Path.of(file))) {
+      return 0;
+    }
+    long start = System.nanoTime();
+    TerminologySnapshot snapshot = terminologyIndexRegistry.latest();
+    try (DataInputStream in =
+        new DataInputStream(
+            new BufferedInputStream(new GZIPInputStream(Files.newInputStream(Path.of(file)))))) {
+      if (in.readInt() != MAGIC) {
+        log.warn("Ignoring warm cache {}: not a warm cache file", file);
+        return 0;
+      }
+      String version = in.readUTF();
+      String fingerprint = in.readUTF();
+      if (!version.equals(snapshot.version()) || !fingerprint.equals(snapshot.fingerprint())) {
+        log.info("Discarding warm cache {} of terminology version {}", file, version);
+        return 0;
+      }
+      int restored = 0;
+      int categories = in.readInt();
+      for (int i = 0; i < categories; i++) {
+        Class<? extends Displayable> type = snomedService.getCategoryByName(in.readUTF());
+        int count = in.readInt();
+        Map<String, Object> resolutions = new HashMap<>(count * 2);
+        for (int j = 0; j < count; j++) {
+          String key = in.readUTF();
+          if (in.readBoolean()) {
+            String code = in.readUTF();
+            String display = in.readUTF();
+            Displayable concept =
+                type == null ? null : snomedService.toConcept(type, code, display);
+            if (concept != null) {
+              resolutions.put(key, concept);
+            }
+          } else {
+            resolutions.put(key, null);
+          }
+        }
+        if (type != null) {
+          terminologyCache.preload(type, version, resolutions);
+          restored += resolutions.size();
+        }
+      }
+      log.info(
+          "Restored {} terminology resolutions from {} in {} ms",
+          restored,
+          file,
+          (System.nanoTime() - start) / 1_000_000);
+      return restored;
+    } catch (IOException | RuntimeException e) {
+      log.warn("Ignoring unreadable warm cache {}", file, e);
+      return 0;
+    }
+  }
+
+  /** Writes the resolutions cached for the latest terminology version, replacing the file. */
+  public synchronized void save() {
+    if (file.isBlank()) {
+      return;
+    }
+    TerminologySnapshot snapshot = terminologyIndexRegistry.latest();
+    Map<Class<?>, Map<String, Object>> entries = terminologyCache.getEntries(snapshot.version());
+    if (entries.isEmpty()) {
+      return;
+    }
+    Path target = Path.of(file);
+    Path temporary = target.resolveSibling(target.getFileName() + ".tmp");
+    int saved = 0;
+    try {
+      if (target.getParent() != null) {
+        Files.createDirectories(target.getParent());
+      }
+      try (DataOutputStream out =
+          new DataOutputStream(
+              new BufferedOutputStream(new GZIPOutputStream(Files.newOutputStream(temporary))))) {
+        out.writeInt(MAGIC);
+        out.writeUTF(snapshot.version());
+        out.writeUTF(snapshot.fingerprint());
+        out.writeInt(entries.size());
+        for (Map.Entry<Class<?>, Map<String, Object>> category : entries.entrySet()) {
+          List<Map.Entry<String, Object>> resolutions =
+              category.getValue().entrySet().stream()
+                  .filter(entry -> entry.getKey().length() <= MAX_KEY_LENGTH)
+                  .toList();
+          out.writeUTF(category.getKey().getSimpleName());
+          out.writeInt(resolutions.size());
+          for (Map.Entry<String, Object> resolution : resolutions) {
+            out.writeUTF(resolution.getKey());
+            Displayable concept = (Displayable) resolution.getValue();
+            out.writeBoolean(concept != null);
+            if (concept != null) {
+              out.writeUTF(Objects.toString(concept.getCode(), ""));
+              out.writeUTF(Objects.toString(concept.getDisplay(), ""));
+            }
+          }
+          saved += resolutions.size();
+        }
+      }
+      Files.move(
+          temporary,
+          target,
+          StandardCopyOption.REPLACE_EXISTING,
+          StandardCopyOption.ATOMIC_MOVE);
+      log.debug("Saved {} terminology resolutions to {}", saved, file);
+    } catch (IOException e) {
+      log.warn("Could not save the warm cache to {}", file, e);
+    }
+  }
+}
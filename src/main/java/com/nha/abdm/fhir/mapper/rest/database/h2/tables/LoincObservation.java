@@ -0,0 +1,29 @@
+/* (C) 2024 */
+package com.nha.abdm.fhir.mapper.rest.database.h2.tables;
+
+import com.nha.abdm.fhir.mapper.rest.common.constants.SnomedCodeIdentifier;
+import com.nha.abdm.fhir.mapper.rest.database.h2.services.Displayable;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** LOINC observation code, with the wellness category ex: vitalSigns or diagnosticLab it is for. */
+@Data
+@Entity
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+@Table(name = "loinc_observation")
+public class LoincObservation implements Displayable {
+  @Id public String code;
+
+  public String display;
+
+  public String category;
+
+  public final String type = SnomedCodeIdentifier.LOINC_OBSERVATIONS;
+}
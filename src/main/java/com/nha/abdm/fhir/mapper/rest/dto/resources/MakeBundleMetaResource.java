@@ -3,14 +3,23 @@ package com.nha.abdm.fhir.mapper.rest.dto.resources;
 
 import com.nha.abdm.fhir.mapper.Utils;
 import com.nha.abdm.fhir.mapper.rest.common.constants.BundleFieldIdentifier;
+import com.nha.abdm.fhir.mapper.rest.common.constants.BundleUrlIdentifier;
 import com.nha.abdm.fhir.mapper.rest.common.constants.ResourceProfileIdentifier;
+import com.nha.abdm.fhir.mapper.rest.database.h2.index.TerminologyIndexRegistry;
 import java.text.ParseException;
 import org.hl7.fhir.r4.model.Coding;
 import org.hl7.fhir.r4.model.Meta;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
 @Component
 public class MakeBundleMetaResource {
+  @Autowired private TerminologyIndexRegistry terminologyIndexRegistry;
+
+  @Value("${fhir.mapper.terminology.stamp-version:false}")
+  private boolean stampTerminologyVersion;
+
   public Meta getMeta() throws ParseException {
     Meta meta = new Meta();
     meta.setVersionId("1");
@@ -22,6 +31,12 @@ public class MakeBundleMetaResource {
             .setSystem(ResourceProfileIdentifier.PROFILE_BUNDLE_META)
             .setCode("V")
             .setDisplay(BundleFieldIdentifier.VERY_RESTRICTED));
+    if (stampTerminologyVersion) {
+      meta.addTag(
+          new Coding()
+              .setSystem(BundleUrlIdentifier.TERMINOLOGY_VERSION_URL)
+              .setCode(terminologyIndexRegistry.current().version()));
+    }
     return meta;
   }
 }
@@ -8,6 +8,7 @@ import com.nha.abdm.fhir.mapper.rest.common.constants.ResourceProfileIdentifier;
 import com.nha.abdm.fhir.mapper.rest.common.helpers.DateRange;
 import com.nha.abdm.fhir.mapper.rest.database.h2.services.SnomedService;
 import com.nha.abdm.fhir.mapper.rest.database.h2.tables.SnomedConditionProcedure;
+import com.nha.abdm.fhir.mapper.rest.requests.helpers.ChiefComplaintResource;
 import java.text.ParseException;
 import java.util.UUID;
 import org.hl7.fhir.r4.model.*;
@@ -21,11 +22,47 @@ public class MakeConditionResource {
   public Condition getCondition(
       String conditionDetails, Patient patient, String recordedDate, DateRange dateRange)
       throws ParseException {
+    return getCondition(conditionDetails, patient, recordedDate, dateRange, null);
+  }
+
+  /**
+   * Condition of a complaint, coded with the code it carries when that code is valid
+   *
+   * @param snomed code already resolved for the complaint text ex: by SnomedService.resolveAll,
+   *     looked up when null and the complaint carries no valid code
+   */
+  public Condition getCondition(
+      ChiefComplaintResource complaint, Patient patient, SnomedConditionProcedure snomed)
+      throws ParseException {
+    SnomedConditionProcedure coded =
+        snomedService.getByCode(
+            SnomedConditionProcedure.class, complaint.getCode(), complaint.getSystem());
+    return getCondition(
+        complaint.getComplaint(),
+        patient,
+        complaint.getRecordedDate(),
+        complaint.getDateRange(),
+        coded != null ? coded : snomed);
+  }
+
+  /**
+   * @param snomed code already resolved for conditionDetails ex: by SnomedService.resolveAll,
+   *     looked up when null
+   */
+  public Condition getCondition(
+      String conditionDetails,
+      Patient patient,
+      String recordedDate,
+      DateRange dateRange,
+      SnomedConditionProcedure snomed)
+      throws ParseException {
     HumanName patientName = patient.getName().get(0);
     Condition condition = new Condition();
     condition.setId(UUID.randomUUID().toString());
 
-    SnomedConditionProcedure snomed = snomedService.getConditionProcedureCode(conditionDetails);
+    if (snomed == null) {
+      snomed = snomedService.getConditionProcedureCode(conditionDetails);
+    }
     condition.setCode(
         new CodeableConcept()
             .addCoding(
@@ -2,10 +2,13 @@
 package com.nha.abdm.fhir.mapper.rest.dto.resources;
 
 import com.nha.abdm.fhir.mapper.Utils;
+import com.nha.abdm.fhir.mapper.rest.common.constants.BundleFieldIdentifier;
 import com.nha.abdm.fhir.mapper.rest.common.constants.BundleResourceIdentifier;
 import com.nha.abdm.fhir.mapper.rest.common.constants.BundleUrlIdentifier;
 import com.nha.abdm.fhir.mapper.rest.common.constants.ResourceProfileIdentifier;
+import com.nha.abdm.fhir.mapper.rest.database.h2.services.Displayable;
 import com.nha.abdm.fhir.mapper.rest.database.h2.services.SnomedService;
+import com.nha.abdm.fhir.mapper.rest.database.h2.tables.LoincObservation;
 import com.nha.abdm.fhir.mapper.rest.database.h2.tables.SnomedDiagnostic;
 import com.nha.abdm.fhir.mapper.rest.database.h2.tables.SnomedObservation;
 import com.nha.abdm.fhir.mapper.rest.requests.helpers.DiagnosticResource;
@@ -36,16 +39,23 @@ public class MakeDiagnosticLabResource {
             .setLastUpdatedElement(Utils.getCurrentTimeStamp())
             .addProfile(ResourceProfileIdentifier.PROFILE_DIAGNOSTIC_REPORT_LAB));
     diagnosticReport.setStatus(DiagnosticReport.DiagnosticReportStatus.FINAL);
-    SnomedDiagnostic snomed =
-        snomedService.getSnomedDiagnosticCode(diagnosticResource.getServiceName());
+    LoincObservation loinc =
+        snomedService.getLoincObservationCode(
+            BundleFieldIdentifier.DIAGNOSTIC_LAB, diagnosticResource.getServiceName());
+    Displayable service =
+        loinc != null
+            ? loinc
+            : snomedService.getSnomedDiagnosticCode(diagnosticResource.getServiceName());
+    String serviceSystem =
+        loinc != null ? BundleUrlIdentifier.LOINC_URL : BundleUrlIdentifier.SNOMED_URL;
     diagnosticReport.setCode(
         new CodeableConcept()
             .setText(diagnosticResource.getServiceName())
             .addCoding(
                 new Coding()
-                    .setSystem(BundleUrlIdentifier.LOINC_URL)
-                    .setCode(snomed.getCode())
-                    .setDisplay(snomed.getDisplay())));
+                    .setSystem(serviceSystem)
+                    .setCode(service.getCode())
+                    .setDisplay(service.getDisplay())));
     diagnosticReport.setSubject(
         new Reference()
             .setReference(BundleResourceIdentifier.PATIENT + "/" + patient.getId())
@@ -69,7 +79,7 @@ public class MakeDiagnosticLabResource {
                 new Coding()
                     .setSystem(BundleUrlIdentifier.SNOMED_URL)
                     .setCode(snomedDiagnostic.getCode())
-                    .setDisplay(snomed.getDisplay())));
+                    .setDisplay(snomedDiagnostic.getDisplay())));
     for (Observation observation : observationList) {
       diagnosticReport.addResult(
           new Reference()
@@ -46,12 +46,20 @@ public class MakeImmunizationResource {
           new Extension()
               .setValue(new StringType().setValue(immunizationResource.getVaccineName()))
               .setUrl(ResourceProfileIdentifier.PROFILE_VACCINE_BRAND_NAME));
-
-      SnomedVaccine snomedVaccine =
-          snomedService.getSnomedVaccineCode(immunizationResource.getVaccineName());
+    }
+    SnomedVaccine snomedVaccine =
+        snomedService.getByCode(
+            SnomedVaccine.class, immunizationResource.getCode(), immunizationResource.getSystem());
+    if (snomedVaccine == null && Objects.nonNull(immunizationResource.getVaccineName())) {
+      snomedVaccine = snomedService.getSnomedVaccineCode(immunizationResource.getVaccineName());
+    }
+    if (snomedVaccine != null) {
       immunization.setVaccineCode(
           new CodeableConcept()
-              .setText(immunizationResource.getVaccineName())
+              .setText(
+                  Objects.nonNull(immunizationResource.getVaccineName())
+                      ? immunizationResource.getVaccineName()
+                      : snomedVaccine.getDisplay())
               .addCoding(
                   new Coding()
                       .setSystem(BundleUrlIdentifier.SNOMED_URL)
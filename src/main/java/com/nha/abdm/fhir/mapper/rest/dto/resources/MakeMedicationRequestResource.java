@@ -25,6 +25,29 @@ public class MakeMedicationRequestResource {
       List<Practitioner> practitioners,
       Patient patient)
       throws ParseException {
+    return getMedicationResource(
+        authoredOn,
+        prescriptionResource,
+        medicationCondition,
+        organization,
+        practitioners,
+        patient,
+        null);
+  }
+
+  /**
+   * @param snomedMedicine code already resolved for the medicine ex: by SnomedService.resolveAll,
+   *     looked up when null; a valid code supplied in the prescription takes precedence
+   */
+  public MedicationRequest getMedicationResource(
+      String authoredOn,
+      PrescriptionResource prescriptionResource,
+      Condition medicationCondition,
+      Organization organization,
+      List<Practitioner> practitioners,
+      Patient patient,
+      SnomedMedicine snomedMedicine)
+      throws ParseException {
     HumanName patientName = patient.getName().get(0);
     MedicationRequest medicationRequest = new MedicationRequest();
 
@@ -35,8 +58,14 @@ public class MakeMedicationRequestResource {
             .setLastUpdatedElement(Utils.getCurrentTimeStamp()));
 
     // Setting Medications
-    SnomedMedicine snomedMedicine =
-        snomedService.getSnomedMedicineCode(prescriptionResource.getMedicine());
+    SnomedMedicine coded =
+        snomedService.getByCode(
+            SnomedMedicine.class, prescriptionResource.getCode(), prescriptionResource.getSystem());
+    if (coded != null) {
+      snomedMedicine = coded;
+    } else if (snomedMedicine == null) {
+      snomedMedicine = snomedService.getSnomedMedicineCode(prescriptionResource.getMedicine());
+    }
     medicationRequest.setMedication(
         new CodeableConcept()
             .setText(prescriptionResource.getMedicine())
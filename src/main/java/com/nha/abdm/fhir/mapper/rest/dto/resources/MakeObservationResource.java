@@ -6,6 +6,7 @@ import com.nha.abdm.fhir.mapper.rest.common.constants.BundleResourceIdentifier;
 import com.nha.abdm.fhir.mapper.rest.common.constants.BundleUrlIdentifier;
 import com.nha.abdm.fhir.mapper.rest.common.constants.ResourceProfileIdentifier;
 import com.nha.abdm.fhir.mapper.rest.database.h2.services.SnomedService;
+import com.nha.abdm.fhir.mapper.rest.database.h2.tables.LoincObservation;
 import com.nha.abdm.fhir.mapper.rest.database.h2.tables.SnomedObservation;
 import com.nha.abdm.fhir.mapper.rest.requests.helpers.ObservationResource;
 import java.text.ParseException;
@@ -27,19 +28,28 @@ public class MakeObservationResource {
   public Observation getObservation(
       Patient patient, List<Practitioner> practitionerList, ObservationResource observationResource)
       throws ParseException {
+    return getObservation(patient, practitionerList, observationResource, null);
+  }
+
+  /**
+   * @param snomed code already resolved for the observation ex: by SnomedService.resolveAll, looked
+   *     up when null; a valid code supplied in the observation takes precedence
+   * @throws IllegalArgumentException when the observation carries a LOINC system with a code that
+   *     is not in the LOINC index, or a code system other than SNOMED CT and LOINC
+   */
+  public Observation getObservation(
+      Patient patient,
+      List<Practitioner> practitionerList,
+      ObservationResource observationResource,
+      SnomedObservation snomed)
+      throws ParseException {
     HumanName patientName = patient.getName().get(0);
     Observation observation = new Observation();
     observation.setStatus(Observation.ObservationStatus.FINAL);
-    SnomedObservation snomed =
-        snomedService.getSnomedObservationCode(observationResource.getObservation());
     observation.setCode(
         new CodeableConcept()
             .setText(observationResource.getObservation())
-            .addCoding(
-                new Coding()
-                    .setSystem(BundleUrlIdentifier.SNOMED_URL)
-                    .setCode(snomed.getCode())
-                    .setDisplay(snomed.getDisplay())));
+            .addCoding(getCoding(observationResource, snomed)));
     observation.setSubject(
         new Reference()
             .setReference(BundleResourceIdentifier.PATIENT + "/" + patient.getId())
@@ -71,4 +81,40 @@ public class MakeObservationResource {
             .addProfile(ResourceProfileIdentifier.PROFILE_OBSERVATION));
     return observation;
   }
+
+  private Coding getCoding(ObservationResource observationResource, SnomedObservation snomed) {
+    if (BundleUrlIdentifier.LOINC_URL.equals(observationResource.getSystem())) {
+      LoincObservation loinc =
+          snomedService.getByCode(
+              LoincObservation.class,
+              observationResource.getCode(),
+              observationResource.getSystem());
+      if (loinc == null) {
+        throw new IllegalArgumentException(
+            "LOINC code "
+                + observationResource.getCode()
+                + " of observation "
+                + observationResource.getObservation()
+                + " is unknown");
+      }
+      return new Coding()
+          .setSystem(BundleUrlIdentifier.LOINC_URL)
+          .setCode(loinc.getCode())
+          .setDisplay(loinc.getDisplay());
+    }
+    SnomedObservation coded =
+        snomedService.getByCode(
+            SnomedObservation.class,
+            observationResource.getCode(),
+            observationResource.getSystem());
+    if (coded != null) {
+      snomed = coded;
+    } else if (snomed == null) {
+      snomed = snomedService.getSnomedObservationCode(observationResource.getObservation());
+    }
+    return new Coding()
+        .setSystem(BundleUrlIdentifier.SNOMED_URL)
+        .setCode(snomed.getCode())
+        .setDisplay(snomed.getDisplay());
+  }
 }
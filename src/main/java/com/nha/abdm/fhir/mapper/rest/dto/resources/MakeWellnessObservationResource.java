@@ -5,8 +5,8 @@ import com.nha.abdm.fhir.mapper.rest.common.constants.BundleResourceIdentifier;
 import com.nha.abdm.fhir.mapper.rest.common.constants.BundleUrlIdentifier;
 import com.nha.abdm.fhir.mapper.rest.common.constants.SnomedCodeIdentifier;
 import com.nha.abdm.fhir.mapper.rest.common.constants.WellnessFieldIdentifiers;
+import com.nha.abdm.fhir.mapper.rest.database.h2.services.Displayable;
 import com.nha.abdm.fhir.mapper.rest.database.h2.services.SnomedService;
-import com.nha.abdm.fhir.mapper.rest.database.h2.tables.SnomedObservation;
 import com.nha.abdm.fhir.mapper.rest.requests.helpers.WellnessObservationResource;
 import java.util.ArrayList;
 import java.util.List;
@@ -30,23 +30,26 @@ public class MakeWellnessObservationResource {
     observation.setStatus(Observation.ObservationStatus.FINAL);
     CodeableConcept typeCode = new CodeableConcept();
     Coding coding = new Coding();
-    SnomedObservation snomed =
-        snomedService.getSnomedObservationCode(observationResource.getObservation());
     coding.setSystem(WellnessFieldIdentifiers.getSystem(type));
-    if (Objects.nonNull(snomed)) {
-      coding.setCode(snomed.getCode());
-      coding.setDisplay(snomed.getDisplay());
+    Displayable concept =
+        BundleUrlIdentifier.LOINC_URL.equals(coding.getSystem())
+            ? snomedService.getLoincObservationCode(type, observationResource.getObservation())
+            : snomedService.getSnomedObservationCode(observationResource.getObservation());
+    if (Objects.nonNull(concept)) {
+      coding.setCode(concept.getCode());
+      coding.setDisplay(concept.getDisplay());
       typeCode.addCoding(coding);
     } else {
       coding.setCode(
-          coding.getSystem().equalsIgnoreCase(BundleUrlIdentifier.LOINC_URL)
+          BundleUrlIdentifier.LOINC_URL.equals(coding.getSystem())
               ? SnomedCodeIdentifier.LOINC_UNKNOWN
               : SnomedCodeIdentifier.SNOMED_UNKNOWN);
       coding.setDisplay(observationResource.getObservation());
       typeCode.addCoding(coding);
     }
 
-    typeCode.setText(snomed == null ? observationResource.getObservation() : snomed.getDisplay());
+    typeCode.setText(
+        concept == null ? observationResource.getObservation() : concept.getDisplay());
 
     observation.setCode(typeCode);
     observation.setSubject(
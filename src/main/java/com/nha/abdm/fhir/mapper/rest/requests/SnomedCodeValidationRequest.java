@@ -0,0 +1,20 @@
+/* (C) 2024 */
+package com.nha.abdm.fhir.mapper.rest.requests;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@NoArgsConstructor
+@AllArgsConstructor
+@Data
+@Builder
+public class SnomedCodeValidationRequest {
+  @NotEmpty(message = "codes are mandatory and must not be empty")
+  @Size(max = 1000, message = "at most 1000 codes can be validated at once")
+  private List<String> codes;
+}
@@ -20,4 +20,7 @@ public class ChiefComplaintResource {
   private String recordedDate;
 
   private DateRange dateRange;
+
+  private String code;
+  private String system;
 }
@@ -25,4 +25,7 @@ public class ImmunizationResource {
   private String lotNumber;
   private String manufacturer;
   private int doseNumber;
+
+  private String code;
+  private String system;
 }
@@ -19,4 +19,7 @@ public class ObservationResource {
   private String result;
 
   private ValueQuantityResource valueQuantity;
+
+  private String code;
+  private String system;
 }
@@ -29,4 +29,7 @@ public class PrescriptionResource {
   private String method;
   private String additionalInstructions;
   private String reason;
+
+  private String code;
+  private String system;
 }
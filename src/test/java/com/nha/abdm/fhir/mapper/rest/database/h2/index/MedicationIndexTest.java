@@ -0,0 +1,83 @@
+/* (C) 2024 */
+package com.nha.abdm.fhir.mapper.rest.database.h2.index;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.*;
+import org.junit.jupiter.api.Test;
+
+/** Parses medicine displays into ingredients, strengths and dose forms, and matches products. */
+class MedicationIndexTest {
+  private static final String[] DISPLAYS = {
+    "Paracetamol 1 g oral tablet",
+    "Paracetamol 500 mg oral tablet",
+    "Paracetamol 500 mg effervescent oral tablet",
+    "Amoxicillin 125 mg/5 mL oral suspension",
+    "Acetaminophen 325 mg and oxycodone hydrochloride 5 mg oral tablet",
+    "Amlodipine 5 mg (as amlodipine besylate) oral tablet"
+  };
+
+  @Test
+  void normalizesStrengthsToOneUnitPerDimension() {
+    assertEquals(
+        List.of(new MedicationDisplay.Ingredient("paracetamol", "1000 mg")),
+        MedicationDisplay.parse("Paracetamol 1 g oral tablet").ingredients());
+    assertEquals(
+        MedicationDisplay.parse("Paracetamol 1 g oral tablet"),
+        MedicationDisplay.parse("paracetamol 1000mg oral tablet"));
+    assertEquals(
+        MedicationDisplay.parse("Paracetamol 1,000 mg oral tablet"),
+        MedicationDisplay.parse("Paracetamol 1000 mg oral tablet"));
+    assertEquals(
+        "25 mg/ml",
+        MedicationDisplay.parse("Amoxicillin 125 mg/5 mL oral suspension").strengthKey());
+    assertEquals("0.5 mg", MedicationDisplay.parse("Digoxin 500 microgram tablet").strengthKey());
+  }
+
+  @Test
+  void splitsIngredientListsAndDropsSalts() {
+    MedicationDisplay combination =
+        MedicationDisplay.parse(
+            "Oxycodone hydrochloride 5 mg and acetaminophen 325 mg oral tablet");
+    assertEquals("acetaminophen+oxycodone hydrochloride", combination.ingredientKey());
+    assertEquals("325 mg+5 mg", combination.strengthKey());
+    assertEquals("oral tablet", combination.doseForm());
+
+    MedicationDisplay salt =
+        MedicationDisplay.parse("Amlodipine 5 mg (as amlodipine besylate) oral tablet");
+    assertEquals(
+        List.of(new MedicationDisplay.Ingredient("amlodipine", "5 mg")), salt.ingredients());
+    assertEquals(salt, MedicationDisplay.parse("Amlodipine (as besilate) 5 mg oral tablet"));
+  }
+
+  @Test
+  void expandsDoseFormsAndIgnoresPunctuation() {
+    assertEquals("tablet", MedicationDisplay.parse("Aspirin 75mg tab").doseForm());
+    assertEquals(
+        "oral capsule", MedicationDisplay.parse("Amoxicillin 500 mg oral caps").doseForm());
+    assertEquals("", MedicationDisplay.parse("Aspirin 75 mg").doseForm());
+    assertEquals(
+        MedicationDisplay.parse("Paracetamol 500 mg oral tablet"),
+        MedicationDisplay.parse("Paracetamol 500 mg, oral tablet."));
+    assertEquals("0.5 mg", MedicationDisplay.parse("Digoxin .5 mg; tablet").strengthKey());
+    assertNull(MedicationDisplay.parse("Paracetamol oral tablet"));
+    assertNull(MedicationDisplay.parse("Paracetamol 500 oral tablet"));
+  }
+
+  @Test
+  void matchesProductsByIngredientStrengthAndDoseForm() {
+    MedicationIndex index = MedicationIndex.build(DISPLAYS);
+
+    assertEquals(0, index.match("Paracetamol 1000 mg tab"));
+    assertEquals(1, index.match("paracetamol 500mg tablet"));
+    assertEquals(1, index.match("Paracetamol 500 mg, oral tablet"));
+    assertEquals(2, index.match("Paracetamol 500 mg effervescent tablet"));
+    assertEquals(3, index.match("Amoxicillin 25 mg/mL oral suspension"));
+    assertEquals(4, index.match("acetaminophen 325 mg and oxycodone hydrochloride 5 mg"));
+    assertEquals(5, index.match("Amlodipine 5 mg tablet"));
+    assertEquals(-1, index.match("Paracetamol 650 mg oral tablet"));
+    assertEquals(-1, index.match("Paracetamol 500 mg capsule"));
+    assertEquals(-1, index.match("Oxycodone hydrochloride 5 mg oral tablet"));
+  }
+}
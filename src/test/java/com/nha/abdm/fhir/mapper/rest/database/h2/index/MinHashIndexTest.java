@@ -0,0 +1,44 @@
+/* (C) 2024 */
+package com.nha.abdm.fhir.mapper.rest.database.h2.index;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.*;
+import org.junit.jupiter.api.Test;
+
+/** Candidates of the MinHash index: displays sharing a band of their signature with the input. */
+class MinHashIndexTest {
+  private static final String[][] DISPLAYS = {
+    {"paracetamol", "500", "mg", "oral", "tablet"},
+    {"ibuprofen", "400", "mg", "oral", "tablet"},
+    {"oral", "tablet", "paracetamol", "500", "mg"},
+    {"amoxicillin", "250", "mg", "oral", "capsule"},
+    {}
+  };
+
+  @Test
+  void returnsDisplaysWithTheSameWordSetInAscendingOrder() {
+    MinHashIndex index = MinHashIndex.build(DISPLAYS, new MinHashIndex.Parameters(16, 4, 10, 0));
+
+    int[] candidates =
+        index.candidates(new String[] {"tablet", "mg", "500", "paracetamol", "oral"});
+    assertTrue(Arrays.binarySearch(candidates, 0) >= 0);
+    assertTrue(Arrays.binarySearch(candidates, 2) >= 0);
+    int[] sorted = candidates.clone();
+    Arrays.sort(sorted);
+    assertArrayEquals(sorted, candidates);
+    assertArrayEquals(new int[0], index.candidates(new String[0]));
+    assertArrayEquals(new int[0], index.candidates(new String[] {"warfarin"}));
+  }
+
+  @Test
+  void keepsTheCandidatesCollidingInTheMostBands() {
+    MinHashIndex index = MinHashIndex.build(DISPLAYS, new MinHashIndex.Parameters(32, 1, 2, 0));
+
+    int[] candidates = index.candidates(DISPLAYS[0]);
+    assertEquals(2, candidates.length);
+    assertArrayEquals(new int[] {0, 2}, candidates);
+  }
+}
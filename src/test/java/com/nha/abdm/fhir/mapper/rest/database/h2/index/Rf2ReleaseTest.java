@@ -0,0 +1,86 @@
+/* (C) 2024 */
+package com.nha.abdm.fhir.mapper.rest.database.h2.index;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.util.*;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * Imports the synthetic RF2 snapshot in src/test/resources/rf2 and searches the memory-mapped
+ * index written from it.
+ */
+class Rf2ReleaseTest {
+  private static final Map<String, Set<String>> SEMANTIC_TAGS =
+      Map.of(
+          "SnomedConditionProcedure", Set.of("disorder", "finding", "procedure", "situation"),
+          "SnomedMedicine", Set.of("clinical drug"),
+          "SnomedSpecimen", Set.of("specimen"),
+          "SnomedObservation", Set.of("observable entity"));
+
+  @TempDir Path indexDir;
+
+  @Test
+  void readsAcceptedSynonymsOfActiveConceptsByCategory() throws Exception {
+    Map<String, List<MappedTerminologyIndex.Entry>> entries = readFixture();
+
+    assertEquals(
+        Set.of(
+            new MappedTerminologyIndex.Entry("73211009", "Diabetes mellitus"),
+            new MappedTerminologyIndex.Entry("44054006", "Type 2 diabetes mellitus"),
+            new MappedTerminologyIndex.Entry("38341003", "Hypertensive disorder"),
+            new MappedTerminologyIndex.Entry("38341003", "High blood pressure"),
+            new MappedTerminologyIndex.Entry("80146002", "Appendectomy")),
+        new HashSet<>(entries.get("SnomedConditionProcedure")));
+    assertEquals(
+        List.of(new MappedTerminologyIndex.Entry("322236009", "Paracetamol 500 mg oral tablet")),
+        entries.get("SnomedMedicine"));
+    assertEquals(
+        List.of(new MappedTerminologyIndex.Entry("119297000", "Blood specimen")),
+        entries.get("SnomedSpecimen"));
+    assertTrue(entries.get("SnomedObservation").isEmpty());
+  }
+
+  @Test
+  void searchesTheMappedIndexByCosineSimilarity() throws Exception {
+    Path file = indexDir.resolve("SnomedConditionProcedure.idx");
+    MappedTerminologyIndex.write(file, readFixture().get("SnomedConditionProcedure"));
+    MappedTerminologyIndex index = MappedTerminologyIndex.open(file);
+
+    assertEquals(5, index.size());
+    List<MappedTerminologyIndex.Match> diabetes = index.search("Diabetes Mellitus", 200, 2);
+    assertEquals(
+        List.of("73211009", "44054006"),
+        diabetes.stream().map(MappedTerminologyIndex.Match::code).toList());
+    assertEquals(1.0, diabetes.get(0).score(), 1e-9);
+    assertEquals("38341003", index.search("high blood press", 200, 1).get(0).code());
+    assertEquals("80146002", index.search("append", 200, 1).get(0).code());
+    assertTrue(index.search("blood sugar", 200, 1).isEmpty());
+  }
+
+  @Test
+  void boundsThePostingsExaminedPerLookup() throws IOException {
+    List<MappedTerminologyIndex.Entry> entries = new ArrayList<>();
+    for (int i = 0; i < 40; i++) {
+      entries.add(new MappedTerminologyIndex.Entry("1" + i, "Chronic pain site" + i));
+    }
+    entries.add(new MappedTerminologyIndex.Entry("2", "Chronic pain disorder of back"));
+    Path file = indexDir.resolve("pain.idx");
+    MappedTerminologyIndex.write(file, entries);
+    MappedTerminologyIndex index = MappedTerminologyIndex.open(file);
+
+    assertTrue(index.search("chronic pain d", 2, 1).isEmpty());
+    assertEquals("2", index.search("chronic pain d", 10, 1).get(0).code());
+  }
+
+  private static Map<String, List<MappedTerminologyIndex.Entry>> readFixture()
+      throws IOException, URISyntaxException {
+    Path releaseDir = Path.of(Rf2ReleaseTest.class.getResource("/rf2").toURI());
+    return Rf2Release.open(releaseDir).read(SEMANTIC_TAGS);
+  }
+}
@@ -0,0 +1,51 @@
+/* (C) 2024 */
+package com.nha.abdm.fhir.mapper.rest.database.h2.index;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import java.util.*;
+import org.junit.jupiter.api.Test;
+
+/** Edit distances, delete dictionary and corrections of the symmetric delete spelling corrector. */
+class SpellingCorrectorTest {
+
+  @Test
+  void measuresOptimalStringAlignmentDistance() {
+    assertEquals(0, SpellingCorrector.distance("aspirin", "aspirin", 2));
+    assertEquals(1, SpellingCorrector.distance("paracetmaol", "paracetamol", 2));
+    assertEquals(1, SpellingCorrector.distance("ibuprofn", "ibuprofen", 2));
+    assertEquals(2, SpellingCorrector.distance("amoxycilin", "amoxicillin", 2));
+    assertEquals(3, SpellingCorrector.distance("kitten", "sitting", 3));
+    assertEquals(3, SpellingCorrector.distance("kitten", "sitting", 2));
+    assertEquals(2, SpellingCorrector.distance("", "ab", 2));
+  }
+
+  @Test
+  void deletesUpToTheGivenCharactersOfThePrefix() {
+    assertEquals(Set.of("abc", "bc", "ac", "ab"), SpellingCorrector.deletes("abc", 1, 7));
+    assertEquals(
+        Set.of("abc", "bc", "ac", "ab", "a", "b", "c"), SpellingCorrector.deletes("abc", 2, 7));
+    assertEquals(
+        Set.of("abcd", "bcd", "acd", "abd", "abc"), SpellingCorrector.deletes("abcdefgh", 1, 4));
+  }
+
+  @Test
+  void correctsToTheClosestThenMostFrequentWord() {
+    String[] vocabulary = {"amoxicillin", "paracetamol", "paracetamols", "tablet"};
+    SpellingCorrector corrector =
+        SpellingCorrector.build(
+            vocabulary, new HashSet<>(Arrays.asList(vocabulary)), new int[] {3, 5, 1, 9}, 2, 7);
+
+    assertArrayEquals(
+        new String[] {"paracetamol", "tablet"},
+        corrector.correct(new String[] {"paracetmol", "tablet"}));
+    assertArrayEquals(
+        new String[] {"amoxicillin"}, corrector.correct(new String[] {"amoxycillin"}));
+    String[] known = {"tab", "500mg", "tablet"};
+    assertSame(known, corrector.correct(known));
+    assertEquals(3, corrector.getLookups());
+    assertEquals(2, corrector.getCorrections());
+  }
+}
@@ -0,0 +1,192 @@
+/* (C) 2024 */
+package com.nha.abdm.fhir.mapper.rest.database.h2.index;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import com.nha.abdm.fhir.mapper.rest.database.h2.services.Displayable;
+import java.util.*;
+import java.util.stream.Collectors;
+import org.apache.commons.text.similarity.CosineSimilarity;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Pins the cosine ranking of the index to the fuzzy match it replaced: substring candidates, at
+ * most two words longer than the input, scored by the cosine of their lower-cased word counts.
+ */
+class TerminologyIndexTest {
+  private static final int CANDIDATE_LIMIT = 20;
+
+  @Test
+  void scoresCandidatesAsTheCosineOfTheirLowerCasedWordCounts() {
+    TerminologyIndex<Concept> index =
+        TerminologyIndex.build(
+            List.of(
+                new Concept("1", "Fever"),
+                new Concept("2", "Fever fever"),
+                new Concept("3", "Fever with chills"),
+                new Concept("4", "FEVER OF UNKNOWN ORIGIN"),
+                new Concept("5", "Relapsing fever fever")));
+
+    for (String input : List.of("fever", "FEVER", "Fever fever", "fever with chills")) {
+      int[] ids = index.candidates(input, CANDIDATE_LIMIT);
+      for (ScoredConcept<Concept> match : index.topMatches(input, ids, ids.length)) {
+        assertEquals(
+            baselineCosine(input, match.concept().getDisplay()),
+            match.score(),
+            1e-9,
+            input + " / " + match.concept().getDisplay());
+      }
+    }
+    assertEquals("1", index.bestMatch("FEVER", CANDIDATE_LIMIT).getCode());
+    assertEquals("2", index.bestMatch("fever Fever", CANDIDATE_LIMIT).getCode());
+  }
+
+  @Test
+  void skipsCandidatesMoreThanTwoWordsLongerThanTheInput() {
+    TerminologyIndex<Concept> index =
+        TerminologyIndex.build(
+            List.of(
+                new Concept("1", "Pain in left lower limb"),
+                new Concept("2", "Pain in limb"),
+                new Concept("3", "Abdominal pain")));
+
+    assertEquals(
+        List.of("3", "2"),
+        codes(index.topMatches("pain", index.candidates("pain", CANDIDATE_LIMIT), 3)));
+    assertEquals(
+        List.of("2", "3"),
+        codes(index.topMatches("pain limb", index.candidates("pain", CANDIDATE_LIMIT), 3)));
+    assertEquals("1", index.bestMatch("in left lower", CANDIDATE_LIMIT).getCode());
+  }
+
+  @Test
+  void returnsTheCandidateScoringZeroWhenItIsTheOnlyOne() {
+    TerminologyIndex<Concept> index =
+        TerminologyIndex.build(List.of(new Concept("322236009", "Paracetamol 500 mg")));
+
+    List<ScoredConcept<Concept>> matches =
+        index.topMatches("para", index.candidates("para", CANDIDATE_LIMIT), 1);
+    assertEquals(0.0, baselineCosine("para", "Paracetamol 500 mg"));
+    assertEquals(List.of("322236009"), codes(matches));
+    assertEquals(0.0, matches.get(0).score());
+    assertEquals("322236009", index.bestMatch("para", CANDIDATE_LIMIT).getCode());
+  }
+
+  @Test
+  void breaksTiesByLoadOrder() {
+    TerminologyIndex<Concept> index =
+        TerminologyIndex.build(
+            List.of(
+                new Concept("2", "Chest pain"),
+                new Concept("1", "Pain chest"),
+                new Concept("3", "Chest pain")));
+
+    assertEquals("2", index.bestMatch("chest pain", CANDIDATE_LIMIT).getCode());
+    assertNull(index.bestMatch("back pain", CANDIDATE_LIMIT));
+  }
+
+  @Test
+  void repairsOnlyWordsMissingFromTheVocabulary() {
+    TerminologyIndex<Concept> index =
+        TerminologyIndex.build(
+            List.of(
+                new Concept("1", "Ibuprofen 800 mg oral tablet"),
+                new Concept("2", "Aspirin 800 mg oral tablet"),
+                new Concept("3", "Resuture of burst abdomen"),
+                new Concept("4", "Body weight")));
+
+    assertEquals(
+        "ibuprofen 800 mg oral tablet", index.repairWords("Ibuprofn 800 mg oral tablet", 0.6));
+    assertEquals(
+        "1",
+        index.bestMatch(index.repairWords("Ibuprofn 800 mg oral tablet", 0.6), CANDIDATE_LIMIT)
+            .getCode());
+    assertNull(index.repairWords("pain abdomen", 0.6));
+    assertNull(index.repairWords("body ache", 0.6));
+    assertNull(index.repairWords("burst abdomen", 0.6));
+  }
+
+  @Test
+  void prunesOnlySubstringCandidatesBeyondTheLimitByMinHash() {
+    List<Concept> concepts = new ArrayList<>();
+    for (int i = 0; i < 25; i++) {
+      concepts.add(new Concept("c" + i, "Paracetamol and codeine " + i));
+    }
+    concepts.add(new Concept("387517004", "Paracetamol"));
+    concepts.add(new Concept("2", "Aspirin 800 mg oral tablet"));
+    TerminologyIndex<Concept> plain = TerminologyIndex.build(concepts);
+    TerminologyIndex<Concept> hashed =
+        TerminologyIndex.build(
+            concepts,
+            new TerminologyIndex.Settings(
+                0, 0, true, false, false, new MinHashIndex.Parameters(16, 2, 5, 0)));
+
+    assertNull(plain.bestMatch("paracetamol", CANDIDATE_LIMIT));
+    assertEquals("387517004", hashed.bestMatch("paracetamol", CANDIDATE_LIMIT).getCode());
+    assertEquals(
+        Set.of("387517004"),
+        hashed.bestMatches(List.of("paracetamol"), CANDIDATE_LIMIT).values().stream()
+            .map(Concept::getCode)
+            .collect(Collectors.toSet()));
+    assertEquals("2", hashed.bestMatch("aspirin 800 mg", CANDIDATE_LIMIT).getCode());
+    assertNull(hashed.bestMatch("Ibuprofn 800 mg oral tablet", CANDIDATE_LIMIT));
+    assertEquals(2, hashed.getMinHashIndex().getLookups());
+  }
+
+  @Test
+  void samplesTheRecallOfPrunedLookupsInTheBackground() throws InterruptedException {
+    List<Concept> concepts = new ArrayList<>();
+    for (int i = 0; i < 25; i++) {
+      concepts.add(new Concept("c" + i, "Paracetamol and codeine " + i));
+    }
+    concepts.add(new Concept("387517004", "Paracetamol"));
+    TerminologyIndex<Concept> index =
+        TerminologyIndex.build(
+            concepts,
+            new TerminologyIndex.Settings(
+                0, 0, true, false, false, new MinHashIndex.Parameters(16, 2, 5, 1)));
+
+    assertEquals("387517004", index.bestMatch("paracetamol", CANDIDATE_LIMIT).getCode());
+    MinHashIndex minHash = index.getMinHashIndex();
+    for (int wait = 0; wait < 100 && minHash.getSampled() == 0; wait++) {
+      Thread.sleep(50);
+    }
+    assertEquals(1, minHash.getSampled());
+    assertEquals(1, minHash.getRecalled());
+  }
+
+  /** The fuzzy match before the index: commons-text cosine of the lower-cased word counts. */
+  private static double baselineCosine(String input, String display) {
+    return new CosineSimilarity().cosineSimilarity(wordCounts(input), wordCounts(display));
+  }
+
+  private static Map<CharSequence, Integer> wordCounts(String text) {
+    Map<CharSequence, Integer> counts = new HashMap<>();
+    for (String word : text.toLowerCase(Locale.ROOT).split("\\s+")) {
+      counts.merge(word, 1, Integer::sum);
+    }
+    return counts;
+  }
+
+  private static List<String> codes(List<ScoredConcept<Concept>> matches) {
+    return matches.stream().map(match -> match.concept().getCode()).toList();
+  }
+
+  private record Concept(String code, String display) implements Displayable {
+    @Override
+    public String getCode() {
+      return code;
+    }
+
+    @Override
+    public String getDisplay() {
+      return display;
+    }
+
+    @Override
+    public String getType() {
+      return "Concept";
+    }
+  }
+}
@@ -0,0 +1,50 @@
+/* (C) 2024 */
+package com.nha.abdm.fhir.mapper.rest.database.h2.index;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.*;
+import org.junit.jupiter.api.Test;
+
+/** Dice ranking of the vocabulary words sharing character trigrams with a misspelled word. */
+class TrigramIndexTest {
+
+  @Test
+  void cutsSpacePaddedWordsIntoTrigrams() {
+    assertEquals(List.of(" ab", "abc", "bc "), List.copyOf(TrigramIndex.trigrams("abc")));
+    assertEquals(List.of(" a ", " bc", "bc "), List.copyOf(TrigramIndex.trigrams("a  bc")));
+  }
+
+  @Test
+  void ranksByDiceCoefficientAboveTheMinimum() {
+    TrigramIndex index =
+        TrigramIndex.build(new String[] {"ibuprofen", "paracetamol", "lotion", "motion"});
+
+    double[] scores = new double[2];
+    assertArrayEquals(new int[] {0}, index.nearest("ibuprofn", 2, 0.6).drainIds(scores));
+    assertEquals(2.0 * 6 / (8 + 9), scores[0], 1e-9);
+    assertArrayEquals(new int[] {3, 2}, index.nearest("motions", 2, 0.3).drainIds(null));
+    assertArrayEquals(new int[] {3}, index.nearest("motions", 2, 0.6).drainIds(null));
+    assertEquals(0, index.nearest("aspirin", 2, 0.1).size());
+    assertEquals(0, index.nearest("", 2, 0.1).size());
+  }
+
+  @Test
+  void walksOnlyTheRarestTrigramWhenAllAreCommon() {
+    int common = TrigramIndex.MAX_POSTINGS + 1;
+    List<String> words = new ArrayList<>(List.of("ab"));
+    for (int i = 0; i < common; i++) {
+      words.add("ab" + i);
+    }
+    for (int i = 0; i <= common; i++) {
+      words.add(i + "ab");
+    }
+    TrigramIndex index = TrigramIndex.build(words.toArray(new String[0]));
+
+    // " ab" starts the first half of the words and "ab " ends the second, one word more, so only
+    // " ab" is walked: "ab", then "ab0" to "ab9" with 2 * 1 / (2 + 3).
+    TopK nearest = index.nearest("ab", 50, 0.4);
+    assertArrayEquals(new int[] {0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10}, nearest.drainIds(null));
+  }
+}
@@ -0,0 +1,190 @@
+/* (C) 2024 */
+package com.nha.abdm.fhir.mapper.rest.database.h2.services;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.nha.abdm.fhir.mapper.rest.database.h2.index.MappedTerminologyIndex;
+import com.nha.abdm.fhir.mapper.rest.database.h2.tables.SnomedConditionProcedure;
+import com.nha.abdm.fhir.mapper.rest.database.h2.tables.SnomedMedicine;
+import java.sql.Timestamp;
+import java.util.*;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Runs the store and ranking SQL on H2 in PostgreSQL mode, with {@code word_similarity} and {@code
+ * similarity} defined after pg_trgm.
+ */
+class PostgresTerminologySearchTest {
+  private SingleConnectionDataSource dataSource;
+  private JdbcTemplate jdbcTemplate;
+  private PostgresTerminologySearch search;
+
+  @BeforeEach
+  void createStore() {
+    dataSource =
+        new SingleConnectionDataSource(
+            "jdbc:h2:mem:terminology;MODE=PostgreSQL;DATABASE_TO_LOWER=TRUE", "sa", "", true);
+    jdbcTemplate = new JdbcTemplate(dataSource);
+    String functions = TrigramFunctions.class.getName();
+    jdbcTemplate.execute("CREATE ALIAS word_similarity FOR '" + functions + ".wordSimilarity'");
+    jdbcTemplate.execute("CREATE ALIAS similarity FOR '" + functions + ".similarity'");
+    search = new PostgresTerminologySearch();
+    ReflectionTestUtils.setField(search, "jdbcTemplate", jdbcTemplate);
+    ReflectionTestUtils.setField(search, "store", PostgresTerminologySearch.STORE);
+    ReflectionTestUtils.setField(search, "minSimilarity", 0.35);
+    search.createTables();
+  }
+
+  @AfterEach
+  void dropStore() {
+    jdbcTemplate.execute("DROP ALL OBJECTS");
+    dataSource.destroy();
+  }
+
+  @Test
+  void ranksByWordSimilarityThenSimilarityThenCode() {
+    search.store(
+        SnomedMedicine.class,
+        "v1",
+        List.of(
+            medicine("322236009", "Paracetamol 500 mg oral tablet"),
+            medicine("387517004", "Paracetamol"),
+            medicine("322280009", "Paracetamol 650 mg oral tablet"),
+            medicine("329652003", "Ibuprofen 400 mg oral tablet")));
+
+    assertEquals(
+        List.of("387517004", "322236009", "322280009"),
+        codes(search.search(SnomedMedicine.class, "v1", "paracetamol", 5)));
+    assertEquals(
+        "387517004", codes(search.search(SnomedMedicine.class, "v1", "paracetmol", 1)).get(0));
+    assertEquals(List.of(), codes(search.search(SnomedMedicine.class, "v1", "amoxicillin", 5)));
+  }
+
+  @Test
+  void searchesOnlyTheRequestedVersionOfTheCategory() {
+    search.store(
+        SnomedMedicine.class,
+        "v1",
+        List.of(
+            medicine("387517004", "Paracetamol"),
+            medicine("322236009", "Paracetamol 500 mg oral tablet")));
+    search.store(
+        SnomedMedicine.class, "v2", List.of(medicine("322236009", "Paracetamol 500 mg tablet")));
+    search.store(
+        SnomedConditionProcedure.class,
+        "v1",
+        List.of(
+            SnomedConditionProcedure.builder()
+                .code("290856003")
+                .display("Paracetamol poisoning")
+                .build()));
+
+    List<MappedTerminologyIndex.Match> current =
+        search.search(SnomedMedicine.class, "v2", "paracetamol", 5);
+    assertEquals(List.of("322236009"), codes(current));
+    assertEquals("Paracetamol 500 mg tablet", current.get(0).display());
+    assertEquals(
+        List.of("387517004", "322236009"),
+        codes(search.search(SnomedMedicine.class, "v1", "paracetamol", 5)));
+  }
+
+  @Test
+  void storesEachVersionOnce() {
+    List<SnomedMedicine> concepts = List.of(medicine("387517004", "Paracetamol"));
+
+    assertEquals(1, search.store(SnomedMedicine.class, "v1", concepts));
+    assertEquals(0, search.store(SnomedMedicine.class, "v1", concepts));
+    assertEquals(
+        1,
+        jdbcTemplate.queryForObject(
+            "SELECT count(*) FROM \"terminology_concept\" WHERE \"fingerprint\" = 'v1'",
+            Integer.class));
+  }
+
+  @Test
+  void prunesVersionsBeyondTheRetainedOnesUnlessPinned() {
+    ReflectionTestUtils.setField(search, "retainedVersions", 1);
+    List<SnomedMedicine> concepts = List.of(medicine("387517004", "Paracetamol"));
+    for (String version : List.of("v1", "v2", "v3", "v4")) {
+      search.store(SnomedMedicine.class, version, concepts);
+      jdbcTemplate.update(
+          "UPDATE \"terminology_list\" SET \"loaded_at\" = ? WHERE \"fingerprint\" = ?",
+          Timestamp.valueOf("2024-01-0" + version.charAt(1) + " 00:00:00"),
+          version);
+    }
+    search.store(SnomedConditionProcedure.class, "v1", List.of());
+
+    assertEquals(2, search.prune(SnomedMedicine.class, Set.of("v2")));
+    assertEquals(
+        List.of("v2", "v4"),
+        jdbcTemplate.queryForList(
+            "SELECT DISTINCT \"fingerprint\" FROM \"terminology_concept\" ORDER BY 1",
+            String.class));
+    assertEquals(List.of(), codes(search.search(SnomedMedicine.class, "v1", "paracetamol", 5)));
+    assertEquals(
+        1,
+        jdbcTemplate.queryForObject(
+            "SELECT count(*) FROM \"terminology_list\" WHERE \"category\" = ?",
+            Integer.class,
+            SnomedConditionProcedure.class.getSimpleName()));
+  }
+
+  private static SnomedMedicine medicine(String code, String display) {
+    return SnomedMedicine.builder().code(code).display(display).build();
+  }
+
+  private static List<String> codes(List<MappedTerminologyIndex.Match> matches) {
+    return matches.stream().map(MappedTerminologyIndex.Match::code).toList();
+  }
+
+  /** pg_trgm's similarity functions over the trigrams of the space padded words of the text. */
+  public static class TrigramFunctions {
+    public static double similarity(String first, String second) {
+      return jaccard(new HashSet<>(trigrams(first)), new HashSet<>(trigrams(second)));
+    }
+
+    /** Greatest similarity of the first text to a contiguous extent of the second's trigrams. */
+    public static double wordSimilarity(String first, String second) {
+      Set<String> query = new HashSet<>(trigrams(first));
+      List<String> ordered = trigrams(second);
+      double best = 0;
+      for (int from = 0; from < ordered.size(); from++) {
+        Set<String> extent = new HashSet<>();
+        for (int to = from; to < ordered.size(); to++) {
+          extent.add(ordered.get(to));
+          best = Math.max(best, jaccard(query, extent));
+        }
+      }
+      return best;
+    }
+
+    private static double jaccard(Set<String> first, Set<String> second) {
+      Set<String> union = new HashSet<>(first);
+      union.addAll(second);
+      if (union.isEmpty()) {
+        return 0;
+      }
+      Set<String> shared = new HashSet<>(first);
+      shared.retainAll(second);
+      return (double) shared.size() / union.size();
+    }
+
+    private static List<String> trigrams(String text) {
+      List<String> trigrams = new ArrayList<>();
+      for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{N}]+")) {
+        if (!word.isEmpty()) {
+          String padded = "  " + word + " ";
+          for (int i = 0; i + 3 <= padded.length(); i++) {
+            trigrams.add(padded.substring(i, i + 3));
+          }
+        }
+      }
+      return trigrams;
+    }
+  }
+}